@@ -67,6 +67,37 @@ public class AWTVideoRenderer extends VideoRenderer
      */
     private int sh;
 
+    /**
+     * Pixel buffer backing the image source, sw * sh pixels
+     */
+    private int[] pixels;
+
+    /**
+     * Animated image source, reused for all frames
+     */
+    private MemoryImageSource imageSource;
+
+    /**
+     * The image produced by imageSource
+     */
+    private Image image;
+
+    /**
+     * Guards the source size and the image source, which render() fills
+     * on the player's thread while initRendering() may replace them
+     */
+    private final Object frameLock = new Object();
+
+    /**
+     * Negotiated color format of the frames, without the flag bits
+     */
+    private int colorMode = XRGB888;
+
+    /**
+     * ARGB colors of PALETTE8 frames
+     */
+    private int[] palette;
+
 
     /*
      * Locator string used to open the Player instance which this VideoControl is assoicated with. 
@@ -85,14 +116,41 @@ public class AWTVideoRenderer extends VideoRenderer
     }
 
     /**
-     *  Description of the Method
+     *  Negotiates the color format and sets the source size.
+     *  XRGB888, RGB565, RGB555, RGB888 and PALETTE8 frames are
+     *  accepted, anything else falls back to XRGB888.
      *
-     * @param  mode          Description of the Parameter
-     * @param  sourceWidth   Description of the Parameter
-     * @param  sourceHeight  Description of the Parameter
+     * @param  mode          the preferred color format and flags
+     * @param  sourceWidth   the frame width
+     * @param  sourceHeight  the frame height
+     * @return               the color format used, with the flags
      */
-    public void initRendering(int mode, int sourceWidth, int sourceHeight) {
+    public int initRendering(int mode, int sourceWidth, int sourceHeight) {
+        int flags = mode & (USE_ALPHA | NATIVE_RENDER);
+        switch (mode & ~flags) {
+            case RGB565:
+            case RGB555:
+            case RGB888:
+            case PALETTE8:
+                colorMode = mode & ~flags;
+                break;
+            default:
+                colorMode = XRGB888;
+        }
+        palette = null;
 		setSourceSize(sourceWidth, sourceHeight);
+        return colorMode | flags;
+    }
+
+    /**
+     *  Sets the colors of PALETTE8 frames.
+     *
+     * @param  palette  the ARGB colors, copied
+     */
+    public void setPalette(int[] palette) {
+        int[] copy = new int[palette.length];
+        System.arraycopy(palette, 0, copy, 0, copy.length);
+        this.palette = copy;
     }
 
 
@@ -103,44 +161,196 @@ public class AWTVideoRenderer extends VideoRenderer
      * @param  sourceHeight  The new sourceSize value
      */
     private void setSourceSize(int sourceWidth, int sourceHeight) {
-        sw = sourceWidth;
-        sh = sourceHeight;
+        synchronized (frameLock) {
+            sw = sourceWidth;
+            sh = sourceHeight;
+
+            // Default display width and height
+            dw = sw;
+            dh = sh;
+
+            // The image source is recreated for the new size on next render
+            pixels = null;
+            imageSource = null;
+            image = null;
+        }
+    }
 
-        // Default display width and height
-        dw = sw;
-        dh = sh;
+    /**
+     * Creates the animated image source on first use. Every frame is
+     * then copied into the same pixel buffer and announced with
+     * <code>newPixels</code>, so no image is created per frame.
+     * Called holding frameLock.
+     *
+     * @return the new image, to be handed to the canvas once the lock
+     *         is released, or null if the image source already existed
+     */
+    private Image ensureImageSource() {
+        if (imageSource != null) {
+            return null;
+        }
+        pixels = new int[sw * sh];
+        imageSource = new MemoryImageSource(sw, sh, pixels, 0, sw);
+        imageSource.setAnimated(true);
+        // allow partial updates by newPixels(x, y, w, h)
+        imageSource.setFullBufferUpdates(false);
+        image = Toolkit.getDefaultToolkit().createImage(imageSource);
+        return image;
     }
 
+    /**
+     * Shows a complete frame announced to the image source.
+     *
+     * @param  created  the image returned by ensureImageSource()
+     */
+    private void showFrame(Image created) {
+        if (created != null) {
+            canvas.updateImage(created);
+        }
+        canvas.repaint();
+    }
 
     /**
-     *  Description of the Method
+     *  Renders a complete frame.
      *
-     * @param  rgbData  Description of the Parameter
+     * @param  rgbData  the frame, sw * sh pixels
      */
     public void render(int[] rgbData) {
+        if (colorMode != XRGB888) {
+            throw new IllegalStateException("Frames in 32 bit pixel format expected");
+        }
 		// csaito: adding this if. 
         if (canvas != null) {
-
-           Image img = Toolkit.getDefaultToolkit().createImage(
-               new MemoryImageSource(sw, sh, rgbData, 0, sw));
-
-           canvas.updateImage(img);
+            Image created;
+            synchronized (frameLock) {
+                created = ensureImageSource();
+                int len = sw * sh;
+                System.arraycopy(rgbData, 0, pixels, 0,
+                                 rgbData.length < len ? rgbData.length : len);
+                imageSource.newPixels();
+            }
+            showFrame(created);
         }
+    }
 
+    /**
+     *  Renders the changed region of a frame. Only this region is
+     *  copied and converted.
+     *
+     * @param  rgbData  the frame, sw * sh pixels
+     * @param  x        x of the changed region in the source
+     * @param  y        y of the changed region in the source
+     * @param  w        width of the changed region
+     * @param  h        height of the changed region
+     */
+    public void render(int[] rgbData, int x, int y, int w, int h) {
+        if (colorMode != XRGB888) {
+            throw new IllegalStateException("Frames in 32 bit pixel format expected");
+        }
+        if (canvas == null) {
+            return;
+        }
+        boolean first;
+        int rx = 0, ry = 0, rw = 0, rh = 0;
+        synchronized (frameLock) {
+            // The first frame has to be complete
+            first = (imageSource == null);
+            if (!first) {
+                // clip the region to the source
+                if (x < 0) {
+                    w += x;
+                    x = 0;
+                }
+                if (y < 0) {
+                    h += y;
+                    y = 0;
+                }
+                if (x + w > sw) {
+                    w = sw - x;
+                }
+                if (y + h > sh) {
+                    h = sh - y;
+                }
+                if (w <= 0 || h <= 0) {
+                    return;
+                }
+
+                int p = y * sw + x;
+                for (int i = 0; i < h; i++, p += sw) {
+                    System.arraycopy(rgbData, p, pixels, p, w);
+                }
+                imageSource.newPixels(x, y, w, h, true);
+
+                // the region scaled to the display size,
+                // one pixel is added to cover rounding
+                rx = dx + x * dw / sw;
+                ry = dy + y * dh / sh;
+                rw = (x + w) * dw / sw - x * dw / sw + 1;
+                rh = (y + h) * dh / sh - y * dh / sh + 1;
+            }
+        }
+        if (first) {
+            render(rgbData);
+        } else {
+            canvas.repaint(rx, ry, rw, rh);
+        }
     }
 
     /**
-     * Public render method, not supported
+     *  Renders a complete RGB888 or PALETTE8 frame. The frame is
+     *  expanded straight into the pixel buffer of the image source.
+     *
+     * @param  colorData  the frame, sw * sh pixels
      */
     public void render(byte[] colorData) {
-        throw new IllegalStateException("Only 32 bit pixel format supported");
+        if (colorMode != RGB888 && colorMode != PALETTE8) {
+            throw new IllegalStateException("Frames in 8 bit pixel format expected");
+        }
+        if (colorMode == PALETTE8 && palette == null) {
+            throw new IllegalStateException("Palette not set");
+        }
+        if (canvas != null) {
+            Image created;
+            synchronized (frameLock) {
+                created = ensureImageSource();
+                if (colorMode == RGB888) {
+                    int count = colorData.length / 3;
+                    FormatConversionUtils.rgb888ToArgb(colorData, 0, pixels, 0,
+                                                       count < pixels.length ? count : pixels.length);
+                } else {
+                    FormatConversionUtils.paletteToArgb(colorData, 0, palette, pixels, 0,
+                                                        colorData.length < pixels.length ? colorData.length : pixels.length);
+                }
+                imageSource.newPixels();
+            }
+            showFrame(created);
+        }
     }
     
     /**
-     * Public render method, not supported
+     *  Renders a complete RGB565 or RGB555 frame. The frame is
+     *  expanded straight into the pixel buffer of the image source.
+     *
+     * @param  colorData  the frame, sw * sh pixels
      */
     public void render(short[] colorData) {
-        throw new IllegalStateException("Only 32 bit pixel format supported");
+        if (colorMode != RGB565 && colorMode != RGB555) {
+            throw new IllegalStateException("Frames in 16 bit pixel format expected");
+        }
+        if (canvas != null) {
+            Image created;
+            synchronized (frameLock) {
+                created = ensureImageSource();
+                int count = colorData.length < pixels.length ? colorData.length : pixels.length;
+                if (colorMode == RGB565) {
+                    FormatConversionUtils.rgb565ToArgb(colorData, 0, pixels, 0, count);
+                } else {
+                    FormatConversionUtils.rgb555ToArgb(colorData, 0, pixels, 0, count);
+                }
+                imageSource.newPixels();
+            }
+            showFrame(created);
+        }
     }
 
     /**
@@ -228,8 +438,10 @@ public class AWTVideoRenderer extends VideoRenderer
             throw new IllegalArgumentException("Width and Height must be positive");
 
         if (mode == USE_GUI_PRIMITIVE) { // should be, as USE_DIRECT_VIDEO is unsupported
+            dw = width;
+            dh = height;
             if (canvas != null) { 
-               canvas.setSize(width, height);
+               canvas.setDisplaySize(width, height);
             }
         }
          
@@ -366,6 +578,12 @@ public class AWTVideoRenderer extends VideoRenderer
             canvas.close();
             canvas = null;
         }
+        if (image != null) {
+            image.flush();
+            image = null;
+        }
+        imageSource = null;
+        pixels = null;
     }
 
 
@@ -393,22 +611,64 @@ public class AWTVideoRenderer extends VideoRenderer
 
 
         /**
-         *  Description of the Method
+         *  Sets the image to be drawn. The image is animated by its
+         *  source, so this is called once per source size.
          *
-         * @param  img  Description of the Parameter
+         * @param  img  the video image
          */
         public void updateImage(Image img) {
 					if (img != null) {
 						if (preferredWidth == -1  || preferredHeight == -1) {
-						   preferredWidth  = img.getWidth(this);
-						   preferredHeight = img.getHeight(this);
+						   preferredWidth  = dw;
+						   preferredHeight = dh;
 						   this.invalidate();
-						   this.getParent().validate();
+						   if (this.getParent() != null) {
+						       this.getParent().validate();
+						   }
 						}
 						this.img = img;
 						repaint();
 					}
 		}
+
+        /**
+         *  Resizes the component to the new display size, the image
+         *  is scaled to it when drawn.
+         *
+         * @param  width   the display width
+         * @param  height  the display height
+         */
+        public void setDisplaySize(int width, int height) {
+            preferredWidth = width;
+            preferredHeight = height;
+            setSize(width, height);
+            invalidate();
+            if (getParent() != null) {
+                getParent().validate();
+            }
+            repaint();
+        }
+
+        /**
+         *  Clears only the area around the video before drawing,
+         *  every frame covers the whole video area.
+         *
+         * @param  g  the graphics context
+         */
+        public void update(Graphics g) {
+            Dimension size = getSize();
+            if (img == null) {
+                g.clearRect(0, 0, size.width, size.height);
+            } else {
+                int right = dx + dw;
+                int bottom = dy + dh;
+                g.clearRect(0, 0, size.width, dy);
+                g.clearRect(0, bottom, size.width, size.height - bottom);
+                g.clearRect(0, dy, dx, dh);
+                g.clearRect(right, dy, size.width - right, dh);
+            }
+            paint(g);
+        }
         
         public void close() {
             img = null;
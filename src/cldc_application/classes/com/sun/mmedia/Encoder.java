@@ -24,6 +24,9 @@
 
 package com.sun.mmedia;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import javax.microedition.lcdui.Image;
 
 class Encoder {
@@ -69,23 +72,268 @@ class Encoder {
         return encodingParams.substring(lastParamIndex + paramNameString.length(), i);
     }
 
-    static byte[] scale(byte[] rgbData, int oldWidth, int oldHeight, int newWidth, int newHeight) {
-        int width = newWidth;
-        if (oldWidth < newWidth) {
-            width = oldWidth;
-        }
-        int height = newHeight;
-        if (oldHeight < newHeight) {
-            height = oldHeight;
-        }
-        
-        // Just stub. Need to implement scaling algorithm
-        byte[] rgbRes = new byte[newWidth * newHeight];
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                rgbRes[j * height + i] = rgbData[j * width + i];                    
+    /**
+     * Gets a positive integer parameter of the format.
+     *
+     * @return the value or <code>def</code> if it's absent or invalid
+     */
+    static int getIntParamForFormat(String encodingParams, String format,
+                                    String paramName, int def) {
+        String param = getParamForFormat(encodingParams, format, paramName);
+        if (param != null) {
+            try {
+                int value = Integer.parseInt(param);
+                if (value > 0) {
+                    return value;
+                }
+            } catch (NumberFormatException ex) {
+                // Intentionally ignored
+            }
+        }
+        return def;
+    }
+
+    /**
+     * Converts xRGB pixels to packed RGB bytes and scales them to the
+     * new size in the same pass, so no full size RGB copy is made.
+     *
+     * @param argb      source pixels, oldWidth * oldHeight
+     * @param oldWidth  source width
+     * @param oldHeight source height
+     * @param newWidth  destination width
+     * @param newHeight destination height
+     * @return          3 * newWidth * newHeight bytes of RGB data
+     */
+    static byte[] toRgb(int[] argb, int oldWidth, int oldHeight,
+                        int newWidth, int newHeight) {
+        byte[] rgb = new byte[3 * newWidth * newHeight];
+        RowScaler scaler = new RowScaler(argb, oldWidth, oldHeight,
+                                         newWidth, newHeight);
+        int[] row = new int[newWidth];
+        int idx = 0;
+        for (int y = 0; y < newHeight; y++) {
+            scaler.getRow(y, row);
+            for (int x = 0; x < newWidth; x++) {
+                int p = row[x];
+                rgb[idx++] = (byte)(p >> 16);
+                rgb[idx++] = (byte)(p >> 8);
+                rgb[idx++] = (byte)p;
+            }
+        }
+        return rgb;
+    }
+
+    /**
+     * Produces the rows of an xRGB frame scaled to a new size, one row
+     * at a time, so encoders need memory for a few rows only.
+     * <p>
+     * Reductions to half the size or less use a box filter, which
+     * averages all source pixels covered by a destination pixel.
+     * Other sizes are interpolated bilinearly. Both use integer
+     * arithmetic only.
+     */
+    static final class RowScaler {
+        private final int[] argb;
+        private final int oldWidth, oldHeight, newWidth, newHeight;
+        private final boolean box;
+
+        /* box filter: first source column of each destination column */
+        private int[] xs;
+        private int[] sumR, sumG, sumB;
+
+        /* bilinear: source columns and 8 bit weights */
+        private int[] x0, x1, fx;
+
+        RowScaler(int[] argb, int oldWidth, int oldHeight,
+                  int newWidth, int newHeight) {
+            this.argb = argb;
+            this.oldWidth = oldWidth;
+            this.oldHeight = oldHeight;
+            this.newWidth = newWidth;
+            this.newHeight = newHeight;
+
+            box = 2 * newWidth <= oldWidth || 2 * newHeight <= oldHeight;
+            if (newWidth == oldWidth && newHeight == oldHeight) {
+                // rows are copied
+            } else if (box) {
+                xs = new int[newWidth + 1];
+                for (int x = 0; x <= newWidth; x++) {
+                    xs[x] = (int)((long)x * oldWidth / newWidth);
+                }
+                sumR = new int[newWidth];
+                sumG = new int[newWidth];
+                sumB = new int[newWidth];
+            } else {
+                x0 = new int[newWidth];
+                x1 = new int[newWidth];
+                fx = new int[newWidth];
+                for (int x = 0; x < newWidth; x++) {
+                    int pos = srcPos(x, oldWidth, newWidth);
+                    x0[x] = pos >> 16;
+                    x1[x] = x0[x] + 1 < oldWidth ? x0[x] + 1 : x0[x];
+                    fx[x] = (pos >> 8) & 0xFF;
+                }
+            }
+        }
+
+        /**
+         * Gets a destination row as opaque xRGB pixels.
+         *
+         * @param y   the destination row, 0 .. newHeight - 1
+         * @param row receives newWidth pixels
+         */
+        void getRow(int y, int[] row) {
+            if (newWidth == oldWidth && newHeight == oldHeight) {
+                System.arraycopy(argb, y * oldWidth, row, 0, oldWidth);
+            } else if (box) {
+                boxRow(y, row);
+            } else {
+                bilinearRow(y, row);
+            }
+        }
+
+        /**
+         * Averages the source pixels covered by each destination pixel
+         * of the row. Every source row is read once.
+         */
+        private void boxRow(int y, int[] row) {
+            int y0 = (int)((long)y * oldHeight / newHeight);
+            int y1 = (int)((long)(y + 1) * oldHeight / newHeight);
+            if (y1 <= y0) {
+                // upscaled rows repeat the nearest source row
+                y0 = y0 < oldHeight ? y0 : oldHeight - 1;
+                y1 = y0 + 1;
+            }
+            for (int x = 0; x < newWidth; x++) {
+                sumR[x] = sumG[x] = sumB[x] = 0;
+            }
+            for (int sy = y0; sy < y1; sy++) {
+                int line = sy * oldWidth;
+                for (int x = 0; x < newWidth; x++) {
+                    int c0 = xs[x];
+                    int c1 = xs[x + 1];
+                    if (c1 <= c0) {
+                        c0 = c0 < oldWidth ? c0 : oldWidth - 1;
+                        c1 = c0 + 1;
+                    }
+                    int r = 0, g = 0, b = 0;
+                    for (int sx = line + c0, end = line + c1; sx < end; sx++) {
+                        int p = argb[sx];
+                        r += (p >> 16) & 0xFF;
+                        g += (p >> 8) & 0xFF;
+                        b += p & 0xFF;
+                    }
+                    sumR[x] += r;
+                    sumG[x] += g;
+                    sumB[x] += b;
+                }
+            }
+            int rows = y1 - y0;
+            for (int x = 0; x < newWidth; x++) {
+                int cols = xs[x + 1] - xs[x];
+                int n = rows * (cols > 0 ? cols : 1);
+                int half = n >> 1;
+                row[x] = 0xFF000000 |
+                         (((sumR[x] + half) / n) << 16) |
+                         (((sumG[x] + half) / n) << 8) |
+                          ((sumB[x] + half) / n);
+            }
+        }
+
+        /**
+         * Interpolates between the four nearest source pixels with
+         * 8 bit weights. Source positions are in 16.16 fixed point.
+         */
+        private void bilinearRow(int y, int[] row) {
+            int pos = srcPos(y, oldHeight, newHeight);
+            int sy = pos >> 16;
+            int fy = (pos >> 8) & 0xFF;
+            int row0 = sy * oldWidth;
+            int row1 = (sy + 1 < oldHeight ? sy + 1 : sy) * oldWidth;
+            for (int x = 0; x < newWidth; x++) {
+                int p00 = argb[row0 + x0[x]];
+                int p01 = argb[row0 + x1[x]];
+                int p10 = argb[row1 + x0[x]];
+                int p11 = argb[row1 + x1[x]];
+                int wx = fx[x];
+                row[x] = 0xFF000000 |
+                    (lerp2((p00 >> 16) & 0xFF, (p01 >> 16) & 0xFF,
+                           (p10 >> 16) & 0xFF, (p11 >> 16) & 0xFF, wx, fy) << 16) |
+                    (lerp2((p00 >> 8) & 0xFF, (p01 >> 8) & 0xFF,
+                           (p10 >> 8) & 0xFF, (p11 >> 8) & 0xFF, wx, fy) << 8) |
+                     lerp2(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, wx, fy);
+            }
+        }
+
+        /**
+         * Maps the center of a destination pixel to the source,
+         * in 16.16 fixed point, clamped to the first pixel.
+         */
+        private static int srcPos(int dst, int oldSize, int newSize) {
+            long pos = (((long)(2 * dst + 1) * oldSize << 16) / (2 * newSize)) - 0x8000;
+            return pos < 0 ? 0 : (int)pos;
+        }
+
+        /**
+         * Bilinear interpolation of one component, weights are 0..255.
+         */
+        private static int lerp2(int c00, int c01, int c10, int c11, int wx, int wy) {
+            int top = (c00 << 8) + (c01 - c00) * wx;
+            int bottom = (c10 << 8) + (c11 - c10) * wx;
+            return ((top << 8) + (bottom - top) * wy + 0x8000) >> 16;
+        }
+    }
+
+    /**
+     * Small write buffer in front of an <code>OutputStream</code>,
+     * encoders write single bytes to it.
+     */
+    static final class Output {
+        private final OutputStream out;
+        private final byte[] buf = new byte[1024];
+        private int count;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        void write(int b) throws IOException {
+            if (count == buf.length) {
+                flush();
+            }
+            buf[count++] = (byte)b;
+        }
+
+        void write(byte[] data, int off, int len) throws IOException {
+            if (len > buf.length - count) {
+                flush();
+                if (len >= buf.length) {
+                    out.write(data, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(data, off, buf, count, len);
+            count += len;
+        }
+
+        void writeShort(int v) throws IOException {
+            write(v >> 8);
+            write(v);
+        }
+
+        void writeInt(int v) throws IOException {
+            write(v >> 24);
+            write(v >> 16);
+            write(v >> 8);
+            write(v);
+        }
+
+        void flush() throws IOException {
+            if (count > 0) {
+                out.write(buf, 0, count);
+                count = 0;
             }
+            out.flush();
         }
-        return rgbRes;
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+/**
+ * Tuning and statistics of the cache that <code>MIDPImageAccessor</code>
+ * keeps for image pixels and images decoded from byte arrays.
+ */
+public final class ImageCacheStatistics {
+
+    private ImageCacheStatistics() {
+    }
+
+    /**
+     * Sets the cache budget in bytes, evicting entries if needed.
+     * 0 disables caching.
+     *
+     * @exception IllegalArgumentException if <code>bytes</code> is negative
+     */
+    public static void setBudget(int bytes) {
+        MIDPImageAccessor.cache.setBudget(bytes);
+    }
+
+    public static int getBudget() {
+        return MIDPImageAccessor.cache.getBudget();
+    }
+
+    /**
+     * Returns the bytes held by the cache.
+     */
+    public static int getSize() {
+        return MIDPImageAccessor.cache.getSize();
+    }
+
+    public static int getHits() {
+        return MIDPImageAccessor.cache.getHits();
+    }
+
+    public static int getMisses() {
+        return MIDPImageAccessor.cache.getMisses();
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the budget.
+     */
+    public static int getEvictions() {
+        return MIDPImageAccessor.cache.getEvictions();
+    }
+
+    /**
+     * Returns the number of pixel entries dropped because their image
+     * was garbage collected.
+     */
+    public static int getCollected() {
+        return MIDPImageAccessor.cache.getCollected();
+    }
+
+    /**
+     * Drops all cached entries.
+     */
+    public static void clear() {
+        MIDPImageAccessor.cache.clear();
+    }
+}
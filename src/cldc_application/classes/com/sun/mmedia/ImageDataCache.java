@@ -0,0 +1,275 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.lang.ref.WeakReference;
+import java.util.Vector;
+import javax.microedition.lcdui.Image;
+
+/**
+ * Memory-bounded cache used by <code>MIDPImageAccessor</code>.
+ * <p>
+ * It keeps the xRGB pixels of immutable images, keyed by image
+ * identity through weak references so a cached image can still be
+ * collected, and the images decoded from byte arrays, keyed by the
+ * content of the array. Data is only cached once it has been asked for
+ * a second time, so one-shot data doesn't push reused entries out.
+ * Entries are evicted least recently used first once the cost of all
+ * entries would exceed the budget.
+ */
+final class ImageDataCache {
+
+    /** Default budget in bytes */
+    static final int DEFAULT_BUDGET = 512 * 1024;
+
+    /** How many keys seen only once are remembered */
+    private static final int SEEN_SIZE = 32;
+    /** How many bytes of larger byte ranges are hashed */
+    private static final int HASH_SAMPLES = 256;
+
+    /** Entries, least recently used first */
+    private final Vector entries = new Vector();
+    /** Keys seen once recently, a ring */
+    private final int[] seen = new int[SEEN_SIZE];
+    private int seenNext;
+    private int seenCount;
+    private int budget = DEFAULT_BUDGET;
+    private int used;
+
+    /* statistics */
+    private int hits;
+    private int misses;
+    private int evictions;
+    private int collected;
+
+    private static final class Entry {
+        /** WeakReference to the Image, or a copy of the encoded bytes */
+        Object key;
+        int hash;
+        /** int[] pixels, or the decoded Image */
+        Object value;
+        int cost;
+    }
+
+    /**
+     * Returns the cached pixels of an immutable image, or null.
+     * The array is shared, callers must copy it.
+     */
+    synchronized int[] getPixels(Image img) {
+        int hash = System.identityHashCode(img);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry e = (Entry)entries.elementAt(i);
+            if (e.hash != hash || !(e.key instanceof WeakReference)) {
+                continue;
+            }
+            Object referent = ((WeakReference)e.key).get();
+            if (referent == img) {
+                touch(i, e);
+                hits++;
+                return (int[])e.value;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void putPixels(Image img, int[] pixels) {
+        Entry e = new Entry();
+        e.key = new WeakReference(img);
+        e.hash = System.identityHashCode(img);
+        e.value = pixels;
+        e.cost = pixels.length * 4;
+        add(e);
+    }
+
+    /**
+     * Returns the image decoded earlier from the same bytes, or null.
+     *
+     * @param hash content hash from <code>hash()</code>
+     */
+    synchronized Image getDecoded(byte[] data, int offset, int length, int hash) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry e = (Entry)entries.elementAt(i);
+            if (e.hash == hash && e.key instanceof byte[] &&
+                    sameBytes((byte[])e.key, data, offset, length)) {
+                touch(i, e);
+                hits++;
+                return (Image)e.value;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void putDecoded(byte[] data, int offset, int length, int hash,
+                                 Image img) {
+        Entry e = new Entry();
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        e.key = copy;
+        e.hash = hash;
+        e.value = img;
+        // the decoded pixels live in the platform image
+        e.cost = length + img.getWidth() * img.getHeight() * 4;
+        add(e);
+    }
+
+    /**
+     * Tells if a key was seen recently and remembers it otherwise.
+     * Collisions only make something cached a bit earlier.
+     *
+     * @param key a content hash or an identity hash
+     */
+    synchronized boolean repeated(int key) {
+        for (int i = 0; i < seenCount; i++) {
+            if (seen[i] == key) {
+                return true;
+            }
+        }
+        seen[seenNext] = key;
+        seenNext = (seenNext + 1) % SEEN_SIZE;
+        if (seenCount < SEEN_SIZE) {
+            seenCount++;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the content hash of a byte range (FNV-1a). Ranges
+     * longer than <code>HASH_SAMPLES</code> bytes are sampled at an
+     * even stride, so the cost doesn't grow with the data; equal
+     * hashes are confirmed byte by byte in <code>getDecoded()</code>.
+     */
+    static int hash(byte[] data, int offset, int length) {
+        int h = 0x811C9DC5;
+        int step = length > HASH_SAMPLES ? length / HASH_SAMPLES : 1;
+        for (int end = offset + length; offset < end; offset += step) {
+            h = (h ^ (data[offset] & 0xFF)) * 0x01000193;
+        }
+        return h ^ length;
+    }
+
+    /**
+     * Sets the budget in bytes, evicting entries if needed.
+     * 0 disables caching.
+     */
+    synchronized void setBudget(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Negative budget");
+        }
+        budget = bytes;
+        evict(0);
+    }
+
+    synchronized int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the bytes held by the cache.
+     */
+    synchronized int getSize() {
+        return used;
+    }
+
+    synchronized int getHits() {
+        return hits;
+    }
+
+    synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the budget.
+     */
+    synchronized int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of pixel entries dropped because their image
+     * was garbage collected.
+     */
+    synchronized int getCollected() {
+        return collected;
+    }
+
+    synchronized void clear() {
+        entries.removeAllElements();
+        used = 0;
+        seenCount = 0;
+        seenNext = 0;
+    }
+
+    private void touch(int index, Entry e) {
+        if (index != entries.size() - 1) {
+            entries.removeElementAt(index);
+            entries.addElement(e);
+        }
+    }
+
+    private void add(Entry e) {
+        if (e.cost > budget) {
+            return;
+        }
+        evict(e.cost);
+        entries.addElement(e);
+        used += e.cost;
+    }
+
+    /**
+     * Drops entries of collected images, then least recently used
+     * entries until <code>room</code> more bytes fit in the budget.
+     */
+    private void evict(int room) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry e = (Entry)entries.elementAt(i);
+            if (e.key instanceof WeakReference &&
+                    ((WeakReference)e.key).get() == null) {
+                entries.removeElementAt(i);
+                used -= e.cost;
+                collected++;
+            }
+        }
+        while (used + room > budget && !entries.isEmpty()) {
+            Entry e = (Entry)entries.elementAt(0);
+            entries.removeElementAt(0);
+            used -= e.cost;
+            evictions++;
+        }
+    }
+
+    private static boolean sameBytes(byte[] a, byte[] b, int offset, int length) {
+        if (a.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -24,9 +24,13 @@
 
 package com.sun.mmedia;
 
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
- * Wrapper class for native JPEG encoder.
+ * JPEG encoder for snapshots. The byte array variant wraps the native
+ * encoder, the stream variant is a baseline encoder in Java which
+ * writes the image while it is being compressed.
  * 
  */
 class JPEGEncoder  extends Encoder {
@@ -35,8 +39,6 @@ class JPEGEncoder  extends Encoder {
         
     public static byte[] encode(int[] rgbData, int width, int height, String encodeParams) {
         String qualityParam = getParamForFormat(encodeParams, formatString, qualityString);
-        String widthParam = getParamForFormat(encodeParams, formatString, widthString);
-        String heightParam = getParamForFormat(encodeParams, formatString, heightString);
 
         /* REVISE: where to place defualt value? */
         int quality = 80;
@@ -46,33 +48,463 @@ class JPEGEncoder  extends Encoder {
             // Intentionally ignored
         }
         
-        int targetWidth = width;
-        try {
-            targetWidth = Integer.parseInt(widthParam);        
-        } catch (NumberFormatException ex) {
-            // Intentionally ignored
+        int targetWidth = getIntParamForFormat(encodeParams, formatString, widthString, width);
+        int targetHeight = getIntParamForFormat(encodeParams, formatString, heightString, height);
+
+        // converted and scaled in one pass
+        byte [] arr = toRgb(rgbData, width, height, targetWidth, targetHeight);
+
+        return encode0(arr, targetWidth, targetHeight, quality);
+    }
+
+    /* Quantization tables of the JPEG standard (Annex K), natural order */
+    private static final int[] LUMINANCE_QT = {
+        16, 11, 10, 16,  24,  40,  51,  61,
+        12, 12, 14, 19,  26,  58,  60,  55,
+        14, 13, 16, 24,  40,  57,  69,  56,
+        14, 17, 22, 29,  51,  87,  80,  62,
+        18, 22, 37, 56,  68, 109, 103,  77,
+        24, 35, 55, 64,  81, 104, 113,  92,
+        49, 64, 78, 87, 103, 121, 120, 101,
+        72, 92, 95, 98, 112, 100, 103,  99
+    };
+
+    private static final int[] CHROMINANCE_QT = {
+        17, 18, 24, 47, 99, 99, 99, 99,
+        18, 21, 26, 66, 99, 99, 99, 99,
+        24, 26, 56, 99, 99, 99, 99, 99,
+        47, 66, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    /* Natural index of the coefficients in zigzag order */
+    private static final int[] ZIGZAG = {
+         0,  1,  8, 16,  9,  2,  3, 10,
+        17, 24, 32, 25, 18, 11,  4,  5,
+        12, 19, 26, 33, 40, 48, 41, 34,
+        27, 20, 13,  6,  7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36,
+        29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46,
+        53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    /* Huffman tables of the JPEG standard (Annex K): code counts and values */
+    private static final int[] DC_LUMINANCE_BITS = {
+        0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int[] DC_CHROMINANCE_BITS = {
+        0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0
+    };
+    private static final int[] DC_VALUES = {
+        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11
+    };
+    private static final int[] AC_LUMINANCE_BITS = {
+        0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d
+    };
+    private static final int[] AC_LUMINANCE_VALUES = {
+        0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12,
+        0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+        0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08,
+        0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+        0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16,
+        0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+        0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39,
+        0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+        0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59,
+        0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+        0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79,
+        0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+        0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98,
+        0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+        0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6,
+        0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+        0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4,
+        0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+        0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea,
+        0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMINANCE_BITS = {
+        0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77
+    };
+    private static final int[] AC_CHROMINANCE_VALUES = {
+        0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21,
+        0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+        0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91,
+        0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+        0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34,
+        0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+        0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38,
+        0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+        0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58,
+        0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+        0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78,
+        0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+        0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96,
+        0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+        0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4,
+        0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+        0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2,
+        0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+        0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9,
+        0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa
+    };
+
+    /* AAN DCT scale factors */
+    private static final double[] AAN_SCALE = {
+        1.0, 1.387039845, 1.306562965, 1.175875602,
+        1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    /**
+     * Encodes a frame as baseline JPEG straight into a stream.
+     * <p>
+     * The frame is scaled, converted to YCbCr and compressed one strip
+     * of 8 rows at a time, so only these rows are held in memory.
+     * No chroma subsampling is done.
+     *
+     * @param rgbData      xRGB pixels, width * height
+     * @param width        frame width
+     * @param height       frame height
+     * @param encodeParams the image type string with optional quality,
+     *                     width and height parameters
+     * @param stream       receives the JPEG image
+     * @exception IOException if writing fails
+     */
+    public static void encode(int[] rgbData, int width, int height,
+                              String encodeParams, OutputStream stream)
+            throws IOException {
+        int quality = getIntParamForFormat(encodeParams, formatString, qualityString, 80);
+        if (quality > 100) {
+            quality = 100;
         }
+        int targetWidth = getIntParamForFormat(encodeParams, formatString, widthString, width);
+        int targetHeight = getIntParamForFormat(encodeParams, formatString, heightString, height);
 
-        int targetHeight = height;
-        try {
-            targetHeight = Integer.parseInt(heightParam);        
-        } catch (NumberFormatException ex) {
-            // Intentionally ignored
+        new StripEncoder(quality, new Output(stream)).encode(
+            new RowScaler(rgbData, width, height, targetWidth, targetHeight),
+            targetWidth, targetHeight);
+    }
+
+    /**
+     * State of one streaming JPEG encoding.
+     */
+    private static final class StripEncoder {
+        private final Output out;
+
+        /* quantization tables in zigzag order, as written to the file */
+        private final int[] lumQt = new int[64];
+        private final int[] chrQt = new int[64];
+        /* DCT output divisors in natural order */
+        private final float[] lumDiv = new float[64];
+        private final float[] chrDiv = new float[64];
+
+        /* Huffman codes and lengths indexed by symbol */
+        private final int[] dcLumCode = new int[12], dcLumSize = new int[12];
+        private final int[] dcChrCode = new int[12], dcChrSize = new int[12];
+        private final int[] acLumCode = new int[256], acLumSize = new int[256];
+        private final int[] acChrCode = new int[256], acChrSize = new int[256];
+
+        private int bitBuffer;
+        private int bitCount;
+
+        private final int[] coefficients = new int[64];
+
+        StripEncoder(int quality, Output out) {
+            this.out = out;
+
+            // quality scaling as in the IJG library
+            int scale = quality < 50 ? 5000 / quality : 200 - 2 * quality;
+            for (int i = 0; i < 64; i++) {
+                int n = ZIGZAG[i];
+                lumQt[i] = clampQ((LUMINANCE_QT[n] * scale + 50) / 100);
+                chrQt[i] = clampQ((CHROMINANCE_QT[n] * scale + 50) / 100);
+            }
+            for (int i = 0; i < 64; i++) {
+                int n = ZIGZAG[i];
+                double aan = AAN_SCALE[n >> 3] * AAN_SCALE[n & 7] * 8;
+                lumDiv[n] = (float)(1.0 / (lumQt[i] * aan));
+                chrDiv[n] = (float)(1.0 / (chrQt[i] * aan));
+            }
+
+            buildCodes(DC_LUMINANCE_BITS, DC_VALUES, dcLumCode, dcLumSize);
+            buildCodes(DC_CHROMINANCE_BITS, DC_VALUES, dcChrCode, dcChrSize);
+            buildCodes(AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES, acLumCode, acLumSize);
+            buildCodes(AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES, acChrCode, acChrSize);
         }
 
-        byte [] arr = new byte[3 * rgbData.length];
-        int idx = 0;
-        for (int i = 0; i < rgbData.length; i++) {
-            arr[idx++] = (byte)((rgbData[i] >> 16) & 0xFF);
-            arr[idx++] = (byte)((rgbData[i] >> 8) & 0xFF);
-            arr[idx++] = (byte)(rgbData[i] & 0xFF);
+        private static int clampQ(int q) {
+            return q < 1 ? 1 : (q > 255 ? 255 : q);
         }
-        
-        if (targetHeight != height || targetWidth != width) {
-            arr = scale(arr, width, height, targetWidth, targetHeight);
+
+        private static void buildCodes(int[] bits, int[] values, int[] code, int[] size) {
+            int c = 0;
+            int k = 0;
+            for (int len = 1; len <= 16; len++) {
+                for (int i = 0; i < bits[len - 1]; i++) {
+                    code[values[k]] = c++;
+                    size[values[k]] = len;
+                    k++;
+                }
+                c <<= 1;
+            }
         }
 
-        return encode0(arr, targetWidth, targetHeight, quality);
+        void encode(RowScaler scaler, int width, int height) throws IOException {
+            writeHeaders(width, height);
+
+            int[][] rows = new int[8][width];
+            int predY = 0, predCb = 0, predCr = 0;
+            float[] y = new float[64];
+            float[] cb = new float[64];
+            float[] cr = new float[64];
+
+            for (int top = 0; top < height; top += 8) {
+                // the last strip repeats the bottom row
+                for (int i = 0; i < 8; i++) {
+                    int r = top + i < height ? top + i : height - 1;
+                    if (r == top + i || i == 0) {
+                        scaler.getRow(r, rows[i]);
+                    } else {
+                        System.arraycopy(rows[i - 1], 0, rows[i], 0, width);
+                    }
+                }
+                for (int left = 0; left < width; left += 8) {
+                    for (int i = 0, n = 0; i < 8; i++) {
+                        int[] row = rows[i];
+                        for (int j = 0; j < 8; j++, n++) {
+                            // the last block repeats the rightmost column
+                            int p = row[left + j < width ? left + j : width - 1];
+                            int red = (p >> 16) & 0xFF;
+                            int green = (p >> 8) & 0xFF;
+                            int blue = p & 0xFF;
+                            y[n] = 0.299f * red + 0.587f * green + 0.114f * blue - 128;
+                            cb[n] = -0.16874f * red - 0.33126f * green + 0.5f * blue;
+                            cr[n] = 0.5f * red - 0.41869f * green - 0.08131f * blue;
+                        }
+                    }
+                    predY = encodeBlock(y, lumDiv, predY,
+                                        dcLumCode, dcLumSize, acLumCode, acLumSize);
+                    predCb = encodeBlock(cb, chrDiv, predCb,
+                                         dcChrCode, dcChrSize, acChrCode, acChrSize);
+                    predCr = encodeBlock(cr, chrDiv, predCr,
+                                         dcChrCode, dcChrSize, acChrCode, acChrSize);
+                }
+            }
+
+            // pad the last byte with 1 bits
+            writeBits(0x7F, 7);
+            out.writeShort(0xFFD9); // EOI
+            out.flush();
+        }
+
+        private void writeHeaders(int width, int height) throws IOException {
+            out.writeShort(0xFFD8); // SOI
+
+            // APP0 JFIF 1.1, no thumbnail
+            out.writeShort(0xFFE0);
+            out.writeShort(16);
+            out.write('J');
+            out.write('F');
+            out.write('I');
+            out.write('F');
+            out.write(0);
+            out.writeShort(0x0101);
+            out.write(0);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.write(0);
+            out.write(0);
+
+            // DQT
+            out.writeShort(0xFFDB);
+            out.writeShort(2 + 2 * 65);
+            out.write(0);
+            for (int i = 0; i < 64; i++) {
+                out.write(lumQt[i]);
+            }
+            out.write(1);
+            for (int i = 0; i < 64; i++) {
+                out.write(chrQt[i]);
+            }
+
+            // SOF0: 8 bit, 3 components, no subsampling
+            out.writeShort(0xFFC0);
+            out.writeShort(17);
+            out.write(8);
+            out.writeShort(height);
+            out.writeShort(width);
+            out.write(3);
+            for (int c = 1; c <= 3; c++) {
+                out.write(c);
+                out.write(0x11);
+                out.write(c == 1 ? 0 : 1);
+            }
+
+            // DHT
+            out.writeShort(0xFFC4);
+            out.writeShort(2 + 4 * 17 + 2 * DC_VALUES.length +
+                           AC_LUMINANCE_VALUES.length + AC_CHROMINANCE_VALUES.length);
+            writeTable(0x00, DC_LUMINANCE_BITS, DC_VALUES);
+            writeTable(0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+            writeTable(0x01, DC_CHROMINANCE_BITS, DC_VALUES);
+            writeTable(0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+            // SOS
+            out.writeShort(0xFFDA);
+            out.writeShort(12);
+            out.write(3);
+            for (int c = 1; c <= 3; c++) {
+                out.write(c);
+                out.write(c == 1 ? 0x00 : 0x11);
+            }
+            out.write(0);
+            out.write(63);
+            out.write(0);
+        }
+
+        private void writeTable(int id, int[] bits, int[] values) throws IOException {
+            out.write(id);
+            for (int i = 0; i < 16; i++) {
+                out.write(bits[i]);
+            }
+            for (int i = 0; i < values.length; i++) {
+                out.write(values[i]);
+            }
+        }
+
+        /**
+         * Transforms, quantizes and writes one 8x8 block.
+         *
+         * @return the quantized DC value, the predictor of the next block
+         */
+        private int encodeBlock(float[] data, float[] div, int pred,
+                                int[] dcCode, int[] dcSize,
+                                int[] acCode, int[] acSize) throws IOException {
+            fdct(data);
+            for (int i = 0; i < 64; i++) {
+                int n = ZIGZAG[i];
+                float v = data[n] * div[n];
+                coefficients[i] = (int)(v < 0 ? v - 0.5f : v + 0.5f);
+            }
+
+            int diff = coefficients[0] - pred;
+            int cat = category(diff);
+            writeBits(dcCode[cat], dcSize[cat]);
+            if (cat > 0) {
+                writeBits(diff < 0 ? diff - 1 : diff, cat);
+            }
+
+            int run = 0;
+            for (int i = 1; i < 64; i++) {
+                int v = coefficients[i];
+                if (v == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    writeBits(acCode[0xF0], acSize[0xF0]); // ZRL
+                    run -= 16;
+                }
+                cat = category(v);
+                int symbol = (run << 4) | cat;
+                writeBits(acCode[symbol], acSize[symbol]);
+                writeBits(v < 0 ? v - 1 : v, cat);
+                run = 0;
+            }
+            if (run > 0) {
+                writeBits(acCode[0x00], acSize[0x00]); // EOB
+            }
+            return coefficients[0];
+        }
+
+        private static int category(int v) {
+            if (v < 0) {
+                v = -v;
+            }
+            int n = 0;
+            while (v != 0) {
+                n++;
+                v >>= 1;
+            }
+            return n;
+        }
+
+        private void writeBits(int bits, int count) throws IOException {
+            bitBuffer = (bitBuffer << count) | (bits & ((1 << count) - 1));
+            bitCount += count;
+            while (bitCount >= 8) {
+                int b = (bitBuffer >> (bitCount - 8)) & 0xFF;
+                out.write(b);
+                if (b == 0xFF) {
+                    out.write(0); // byte stuffing
+                }
+                bitCount -= 8;
+            }
+        }
+
+        /**
+         * Forward DCT by Arai, Agui and Nakajima, in place. The outputs
+         * are scaled, which is compensated by the quantization divisors.
+         */
+        private static void fdct(float[] d) {
+            for (int pass = 0; pass < 2; pass++) {
+                // rows in the first pass, columns in the second
+                int step = pass == 0 ? 1 : 8;
+                int next = pass == 0 ? 8 : 1;
+                for (int k = 0, base = 0; k < 8; k++, base += next) {
+                    int i0 = base, i1 = base + step, i2 = base + 2 * step,
+                        i3 = base + 3 * step, i4 = base + 4 * step,
+                        i5 = base + 5 * step, i6 = base + 6 * step,
+                        i7 = base + 7 * step;
+
+                    float tmp0 = d[i0] + d[i7];
+                    float tmp7 = d[i0] - d[i7];
+                    float tmp1 = d[i1] + d[i6];
+                    float tmp6 = d[i1] - d[i6];
+                    float tmp2 = d[i2] + d[i5];
+                    float tmp5 = d[i2] - d[i5];
+                    float tmp3 = d[i3] + d[i4];
+                    float tmp4 = d[i3] - d[i4];
+
+                    // even part
+                    float tmp10 = tmp0 + tmp3;
+                    float tmp13 = tmp0 - tmp3;
+                    float tmp11 = tmp1 + tmp2;
+                    float tmp12 = tmp1 - tmp2;
+
+                    d[i0] = tmp10 + tmp11;
+                    d[i4] = tmp10 - tmp11;
+
+                    float z1 = (tmp12 + tmp13) * 0.707106781f;
+                    d[i2] = tmp13 + z1;
+                    d[i6] = tmp13 - z1;
+
+                    // odd part
+                    tmp10 = tmp4 + tmp5;
+                    tmp11 = tmp5 + tmp6;
+                    tmp12 = tmp6 + tmp7;
+
+                    float z5 = (tmp10 - tmp12) * 0.382683433f;
+                    float z2 = 0.541196100f * tmp10 + z5;
+                    float z4 = 1.306562965f * tmp12 + z5;
+                    float z3 = tmp11 * 0.707106781f;
+
+                    float z11 = tmp7 + z3;
+                    float z13 = tmp7 - z3;
+
+                    d[i5] = z13 + z2;
+                    d[i3] = z13 - z2;
+                    d[i1] = z11 + z4;
+                    d[i7] = z11 - z4;
+                }
+            }
+        }
     }
 
     private static native byte[] encode0(byte[] rgbData, int w, int h, int qaulity);
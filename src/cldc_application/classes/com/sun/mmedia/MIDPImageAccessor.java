@@ -1,143 +1,231 @@
-/*
- * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
- * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
- * 
- * This program is free software; you can redistribute it and/or
- * modify it under the terms of the GNU General Public License version
- * 2 only, as published by the Free Software Foundation.
- * 
- * This program is distributed in the hope that it will be useful, but
- * WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
- * General Public License version 2 for more details (a copy is
- * included at /legal/license.txt).
- * 
- * You should have received a copy of the GNU General Public License
- * version 2 along with this work; if not, write to the Free Software
- * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
- * 02110-1301 USA
- * 
- * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
- * Clara, CA 95054 or visit www.sun.com if you need additional
- * information or have any questions.
- */
-package com.sun.mmedia;
-
-import javax.microedition.lcdui.Image;
-
-/**
- * The image access class for MIDP.
- *
- * @created    December 16, 2005
- */
-class MIDPImageAccessor implements ImageAccess {
-    
-    /*
-     * ImageAccess I/F method
-     */
-    public int alphaLevelsNumber() {
-        /** 
-         * TBD: get display for current MIDlet
-         * javax.microedition.lcdui.Display d = ...; 
-         * return d.numAlphaLevels();
-         */
-        return 2;
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * The image access class for MIDP.
+ *
+ * @created    December 16, 2005
+ */
+class MIDPImageAccessor implements ImageAccess, ImagePixelAccess {
+
+    /**
+     * Pixels of immutable images and images decoded from bytes,
+     * tuned and inspected through <code>ImageCacheStatistics</code>
+     */
+    static final ImageDataCache cache = new ImageDataCache();
+    
+    /*
+     * ImageAccess I/F method
+     */
+    public int alphaLevelsNumber() {
+        /** 
+         * TBD: get display for current MIDlet
+         * javax.microedition.lcdui.Display d = ...; 
+         * return d.numAlphaLevels();
+         */
+        return 2;
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public boolean isImage(Object image) {
-        return ((null != image) && (image instanceof Image));
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+        return ((null != image) && (image instanceof Image));
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public boolean isMutableImage(Object image){
-        if (!isImage(image)) return false;
-
-        Image img = (Image)image;
-        return img.isMutable();
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+        if (!isImage(image)) return false;
+
+        Image img = (Image)image;
+        return img.isMutable();
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public int getImageWidth(Object image) {
-        if (!isImage(image)) return -1;
-        
-        Image img = (Image)image;
-        return img.getWidth();
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+        if (!isImage(image)) return -1;
+        
+        Image img = (Image)image;
+        return img.getWidth();
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public int getImageHeight(Object image) {
-        if (!isImage(image)) return -1;
-        
-        Image img = (Image)image;
-        return img.getHeight();
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+        if (!isImage(image)) return -1;
+        
+        Image img = (Image)image;
+        return img.getHeight();
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public byte[] getRGBByteImageData(Object image) {
-        if (!isImage(image)) return null;
+        if (!isImage(image)) return null;
 
-        return FormatConversionUtils.
-                intArrayToByteArray(getRGBIntImageData(image));
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+        Image img = (Image)image;
+        int w = img.getWidth();
+        int h = img.getHeight();
+        byte[] data = new byte[w * h * 4];
+
+        int[] cached = cachedPixels(img);
+        if (cached != null) {
+            FormatConversionUtils.fromArgb(cached, 0, data,
+                    FormatConversionUtils.XRGB8888, 0, w * h);
+            return data;
+        }
+
+        // a row at a time, so there's no full size int[] copy
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(row, 0, w, 0, y, w, 1);
+            FormatConversionUtils.fromArgb(row, 0, data,
+                    FormatConversionUtils.XRGB8888, y * w * 4, w);
+        }
+        return data;
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public int[] getRGBIntImageData(Object image) {
-        if (!isImage(image)) return null;
-        
-        Image img = (Image)image;
-        
-        int w = img.getWidth();
-        int h = img.getHeight();
-        int[] data = new int[w * h]; 
-        
-        img.getRGB(data, 0, w, 0, 0, w, h);
-        return data;
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
+        if (!isImage(image)) return null;
+        
+        Image img = (Image)image;
+        
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] data = new int[w * h]; 
+        
+        // callers own the array, so cached pixels are copied
+        int[] cached = cachedPixels(img);
+        if (cached != null) {
+            System.arraycopy(cached, 0, data, 0, w * h);
+        } else {
+            img.getRGB(data, 0, w, 0, 0, w, h);
+        }
+        return data;
+    }
+    
+    /*
+     * ImagePixelAccess I/F method
+     */
+    public boolean getRGBIntImageData(Object image, int[] data) {
+        if (!isImage(image)) return false;
+        
+        Image img = (Image)image;
+        
+        int w = img.getWidth();
+        int h = img.getHeight();
+        if (data == null || data.length < w * h) return false;
+        
+        int[] cached = cachedPixels(img);
+        if (cached != null) {
+            System.arraycopy(cached, 0, data, 0, w * h);
+        } else {
+            img.getRGB(data, 0, w, 0, 0, w, h);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the shared pixels of an immutable image, decoding and
+     * caching them when the image is asked for a second time, or null
+     * for mutable images, images seen only once and images too large
+     * for the cache.
+     */
+    private static int[] cachedPixels(Image img) {
+        if (img.isMutable()) {
+            return null;
+        }
+        int[] pixels = cache.getPixels(img);
+        if (pixels == null) {
+            int w = img.getWidth();
+            int h = img.getHeight();
+            if (w * h * 4 > cache.getBudget() ||
+                    !cache.repeated(System.identityHashCode(img))) {
+                return null;
+            }
+            pixels = new int[w * h];
+            img.getRGB(pixels, 0, w, 0, 0, w, h);
+            cache.putPixels(img, pixels);
+        }
+        return pixels;
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
     public Object imageCreateFromImage(Object image) {
-        if (!isImage(image)) return null;
-        
-        Image img = (Image)image;
-        
-        return Image.createImage(img);
-    }
-
-    /*
-     * ImageAccess I/F method
-     */
-    public Object imageCreateFromStream(java.io.InputStream stream) {
-        if (stream == null)
-            return null;
-        
-        Image image = null;
-        try {
-            image = Image.createImage(stream);
-        } catch (java.io.IOException ioe) {
-            return null;
-        }
-        return image;
-    }
-    
-    /*
-     * ImageAccess I/F method
-     */
-    public Object imageCreateFromByteArray(byte[] data, int offset, int length) {
-        return Image.createImage(data, offset, length);
-    }
-}
+        if (!isImage(image)) return null;
+        
+        Image img = (Image)image;
+        
+        return Image.createImage(img);
+    }
+
+    /*
+     * ImageAccess I/F method
+     */
+    public Object imageCreateFromStream(java.io.InputStream stream) {
+        if (stream == null)
+            return null;
+        
+        Image image = null;
+        try {
+            image = Image.createImage(stream);
+        } catch (java.io.IOException ioe) {
+            return null;
+        }
+        return image;
+    }
+    
+    /*
+     * ImageAccess I/F method
+     */
+    public Object imageCreateFromByteArray(byte[] data, int offset, int length) {
+        if (length * 2 > cache.getBudget()) {
+            return Image.createImage(data, offset, length);
+        }
+        int hash = ImageDataCache.hash(data, offset, length);
+        Image image = cache.getDecoded(data, offset, length, hash);
+        if (image == null) {
+            image = Image.createImage(data, offset, length);
+            // one-shot data such as camera frames is never kept
+            if (cache.repeated(hash)) {
+                cache.putDecoded(data, offset, length, hash, image);
+            }
+        }
+        return image;
+    }
+}
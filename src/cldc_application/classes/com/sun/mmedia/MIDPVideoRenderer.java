@@ -27,6 +27,12 @@ import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.Canvas;
 import javax.microedition.lcdui.Graphics;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Vector;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.OutputConnection;
 
 import javax.microedition.media.Control;
 import javax.microedition.media.Player;
@@ -221,7 +227,7 @@ public final class MIDPVideoRenderer extends VideoRenderer
                 dw = width;
                 dh = height;
             }
-            scaleToDest();
+            invalidateScaledFrame();
             if (pvis)
                 if (mmItem != null)
                     mmItem.refresh(true);
@@ -272,7 +278,7 @@ public final class MIDPVideoRenderer extends VideoRenderer
                         dx = (scrw - dw) / 2;
                     }
                 }
-                scaleToDest();
+                invalidateScaledFrame();
                 if (cvis)
                     canvas.repaint();
 
@@ -283,7 +289,7 @@ public final class MIDPVideoRenderer extends VideoRenderer
                     dw = tmpdw;
                     dh = tmpdh;
                 }
-                scaleToDest();
+                invalidateScaledFrame();
                 if (mode == USE_DIRECT_VIDEO) {
                     canvas.setFullScreenMode(false);
                     if (pvis && cvis)
@@ -354,81 +360,113 @@ public final class MIDPVideoRenderer extends VideoRenderer
         checkState();
         checkPermission();
 
-        if (rgbData == null)
-            throw new IllegalStateException("No image available");
-
         // default value for imageType
         if( null == imageType )
         {
             imageType = encodingString + SNAPSHOT_JPEG;
         }
 
-        /* Need to update  video.snapshot.encodings property accordingly
-         */
+        // raw formats are converted straight from the rendered frame
+        int rawFormat = FormatConversionUtils.rawSnapshotFormat(imageType);
+        if (rawFormat >= 0) {
+            byte [] raw = copyLatestFrameRaw(rawFormat);
+            if (raw == null)
+                throw new IllegalStateException("No image available");
+            return raw;
+        }
+
+        int [] rgbData = copyLatestFrame();
+        if (rgbData == null)
+            throw new IllegalStateException("No image available");
+
         String encoding = getEncodingType(imageType);
-        /* Real need of RAW format encoding is discussable. 
-           We do not maintain it until future request.
-           
-        int format = 0, pixelsize = 0;
-        if (imageType == null || encoding.equalsIgnoreCase(SNAPSHOT_RGB888)) {
-            format = 1;
-            pixelsize = 3;
-        } else if (encoding.equalsIgnoreCase(SNAPSHOT_BGR888)) {
-            format = 2;
-            pixelsize = 3;
-        } else if (encoding.equalsIgnoreCase(SNAPSHOT_RGB565)) {
-            format = 3;
-            pixelsize = 2;
-        } else if (encoding.equalsIgnoreCase(SNAPSHOT_RGB555)) {
-            format = 4;
-            pixelsize = 2;
-        } else */
-         if (SNAPSHOT_PNG.equalsIgnoreCase(encoding)) {
+        if (SNAPSHOT_PNG.equalsIgnoreCase(encoding)) {
             return PNGEncoder.encode(rgbData, videoWidth, videoHeight, imageType);
         } else  if (SNAPSHOT_JPEG.equalsIgnoreCase(encoding)){
             return JPEGEncoder.encode(rgbData, videoWidth, videoHeight, imageType);
         } else 
             throw new MediaException("Image format " + imageType + " not supported");
-        
-        /*
-        byte [] arr = new byte[pixelsize * rgbData.length];
-        int idx = 0;
-        switch (format) {
-            case 1: // RGB888
-                for (int i = 0; i < rgbData.length; i++) {
-                    arr[idx++] = (byte)((rgbData[i] >> 16) & 0xFF);
-                    arr[idx++] = (byte)((rgbData[i] >> 8) & 0xFF);
-                    arr[idx++] = (byte)(rgbData[i] & 0xFF);
-                }
-                break;
-            case 2: // BGR888
-                for (int i = 0; i < rgbData.length; i++) {
-                    arr[idx++] = (byte)((rgbData[i] >> 16) & 0xFF);
-                    arr[idx++] = (byte)((rgbData[i] >> 8) & 0xFF);
-                    arr[idx++] = (byte)(rgbData[i] & 0xFF);
-                }
-                break;
-            case 3: // RGB565
-                for (int i = 0; i < rgbData.length; i++) {
-                    int r = (rgbData[i] >> 19) & 0x1F;
-                    int g = (rgbData[i] >> 10) & 0x3F;
-                    int b = (rgbData[i] >> 3) & 0x1F;
-                    arr[idx++] = (byte)((r << 3) | (g >> 3));
-                    arr[idx++] = (byte)((g << 5) | b);
-                }
-                break;
-            case 4: // RGB555
-                for (int i = 0; i < rgbData.length; i++) {
-                    int r = (rgbData[i] >> 19) & 0x1F;
-                    int g = (rgbData[i] >> 11) & 0x1F;
-                    int b = (rgbData[i] >> 3) & 0x1F;
-                    arr[idx++] = (byte)((r << 2) | (g >> 3));
-                    arr[idx++] = (byte)((g << 5) | b);
-                }
-                break;
+    }
+
+    /**
+     * Takes a snapshot and encodes it straight into a stream.
+     * Unlike <code>getSnapshot(String)</code> the image is encoded in
+     * strips of rows, so no encoded or converted copy of the whole
+     * image is held in memory. Raw formats are written as they are.
+     *
+     * @param imageType the image format, as for <code>getSnapshot</code>
+     * @param stream    receives the encoded image, it is not closed
+     * @exception MediaException if the format is not supported
+     * @exception IOException if writing fails
+     */
+    public void getSnapshot(String imageType, OutputStream stream)
+        throws MediaException, IOException, SecurityException {
+        checkState();
+        checkPermission();
+
+        if (stream == null)
+            throw new IllegalArgumentException("null stream specified");
+
+        if( null == imageType )
+        {
+            imageType = encodingString + SNAPSHOT_JPEG;
+        }
+
+        int rawFormat = FormatConversionUtils.rawSnapshotFormat(imageType);
+        if (rawFormat >= 0) {
+            byte [] raw = copyLatestFrameRaw(rawFormat);
+            if (raw == null)
+                throw new IllegalStateException("No image available");
+            stream.write(raw);
+            return;
+        }
+
+        int [] rgbData = copyLatestFrame();
+        if (rgbData == null)
+            throw new IllegalStateException("No image available");
+
+        String encoding = getEncodingType(imageType);
+        if (SNAPSHOT_PNG.equalsIgnoreCase(encoding)) {
+            PNGEncoder.encode(rgbData, videoWidth, videoHeight, imageType, stream);
+        } else if (SNAPSHOT_JPEG.equalsIgnoreCase(encoding)) {
+            JPEGEncoder.encode(rgbData, videoWidth, videoHeight, imageType, stream);
+        } else
+            throw new MediaException("Image format " + imageType + " not supported");
+    }
+
+    /**
+     * Takes a snapshot and encodes it straight into the connection
+     * opened for a locator, e.g. a file.
+     *
+     * @param imageType the image format, as for <code>getSnapshot</code>
+     * @param locator   a locator which can be opened for writing
+     * @exception MediaException if the format is not supported
+     * @exception IOException if the locator can't be opened or written
+     * @see #getSnapshot(String, OutputStream)
+     */
+    public void getSnapshot(String imageType, String locator)
+        throws MediaException, IOException, SecurityException {
+        if (locator == null)
+            throw new IllegalArgumentException("null locator specified");
+
+        OutputConnection con;
+        try {
+            con = (OutputConnection)Connector.open(locator, Connector.WRITE);
+        } catch (ClassCastException e) {
+            throw new MediaException("Can't write to " + locator);
+        } catch (IllegalArgumentException e) {
+            throw new MediaException(e.getMessage());
+        }
+        try {
+            OutputStream stream = con.openOutputStream();
+            try {
+                getSnapshot(imageType, stream);
+            } finally {
+                stream.close();
+            }
+        } finally {
+            con.close();
         }
-        return arr; 
-        */
     }
 
     /*private int tryParam(String tok, String prop, int def) {
@@ -446,28 +484,86 @@ public final class MIDPVideoRenderer extends VideoRenderer
      * Rendering interface
      ****************************************************************/
     
-    //private int colorMode;
+    /** Negotiated color format of the frames, without the flag bits */
+    private int colorMode = XRGB888;
     //private boolean nativeRender;
     private boolean useAlpha;
-    private int [] rgbData;
+    /** ARGB colors of PALETTE8 frames */
+    private int [] palette;
+
+    /*
+     * Frames are handed from the decoder to the paint thread through
+     * a chain of three buffers. The decoder only ever writes the
+     * 'write' buffer, the painter only ever reads the 'paint' buffer,
+     * and the 'ready' buffer holds the latest complete frame. Buffers
+     * change roles by swapping indices under swapLock, which is never
+     * held while pixels are copied, converted, scaled or drawn.
+     * Frames are kept in the color format they were rendered in and
+     * expanded to 32 bit only by the painter.
+     * A snapshot pins the buffer it reads. Should a pinned buffer
+     * become the decoder's, the decoder drops it from the chain and
+     * renders into a new one, leaving the old one to the snapshot.
+     */
+    private static final int FRAME_BUFFERS = 3;
+    /** The frame buffers of the swap chain: int[], short[] or byte[] */
+    private Object [] frames;
+    /** Index of the buffer owned by the decoder */
+    private int writeIdx;
+    /** Index of the latest complete frame */
+    private int readyIdx;
+    /** Index of the buffer owned by the paint thread */
+    private int paintIdx;
+    /** True if the ready buffer holds a frame not yet taken by the painter */
+    private boolean fresh;
+    /** True once at least one frame has been rendered */
+    private boolean hasFrame;
+    /** Buffers read by snapshots, a buffer once per snapshot */
+    private final Vector pinnedFrames = new Vector(2);
+    /** Protects writeIdx, readyIdx, paintIdx, fresh, hasFrame, pinnedFrames */
+    private final Object swapLock = new Object();
+
+    /** Number of frames passed to render() */
+    private int framesRendered;
+    /** Number of frames replaced before they were painted */
+    private int framesDropped;
+    /** Number of paints that repeated the previously painted frame */
+    private int framesDuplicated;
+
+    /* Paint thread only: the paint buffer as 32 bit pixels */
+    private int [] paintData;
+    /* Paint thread only: expansion buffer for formats other than XRGB888 */
+    private int [] argbData;
+    /* Paint thread only: the paint buffer scaled to the display size */
     private int [] scaledData;
     private boolean scaled;
-    private volatile boolean painting; // to prevent deadlocks
-    //private Image image;
+    private volatile boolean scaledValid;
 
     public Control getVideoControl() {
         return this;
     }
     
-    public void initRendering(int mode, int width, int height) {
-        //colorMode = mode & 0x7F; // mask out NATIVE_RENDER
+    /**
+     * Negotiates the color format. XRGB888, RGB565, RGB555, RGB888
+     * and PALETTE8 frames are accepted, anything else falls back to XRGB888.
+     */
+    public int initRendering(int mode, int width, int height) {
         //nativeRender = (mode & NATIVE_RENDER) > 0;
         useAlpha = (mode & USE_ALPHA) > 0;
         if (width < 1 || height < 1)
             throw new IllegalArgumentException("Positive width and height expected");
         
-        if ((mode & ~(USE_ALPHA | NATIVE_RENDER)) != XRGB888)
-            throw new IllegalArgumentException("Only XRGBA888 mode supported");
+        int flags = mode & (USE_ALPHA | NATIVE_RENDER);
+        switch (mode & ~flags) {
+            case RGB565:
+            case RGB555:
+            case RGB888:
+            case PALETTE8:
+                colorMode = mode & ~flags;
+                break;
+            default:
+                colorMode = XRGB888;
+        }
+        palette = null;
         
         videoWidth = width;
         videoHeight = height;
@@ -478,19 +574,98 @@ public final class MIDPVideoRenderer extends VideoRenderer
             dh = videoHeight;
         }
         
-        rgbData = null;
+        synchronized (swapLock) {
+            frames = new Object[FRAME_BUFFERS];
+            writeIdx = 0;
+            readyIdx = 1;
+            paintIdx = 2;
+            fresh = false;
+            hasFrame = false;
+            framesRendered = 0;
+            framesDropped = 0;
+            framesDuplicated = 0;
+        }
+        paintData = null;
+        argbData = null;
         scaledData = null;
         scaled = false;
-        painting = false;
-        //image = null;
+        scaledValid = false;
+
+        return colorMode | flags;
+    }
+
+    public void setPalette(int[] palette) {
+        int [] copy = new int[palette.length];
+        System.arraycopy(palette, 0, copy, 0, copy.length);
+        this.palette = copy;
+        invalidateScaledFrame();
     }
 
     /**
-     * Public render method
+     * Public render method for XRGB888 frames.
+     * The frame is copied into the decoder's buffer of the swap chain,
+     * so the caller may reuse <code>colorData</code> right after return.
      */
     public void render(int[] colorData) {
-        rgbData = colorData;
-        scaleToDest();
+        if (colorMode != XRGB888)
+            throw new IllegalStateException("Frames in 32 bit pixel format expected");
+        queueFrame(colorData, colorData.length);
+    }
+    
+    /**
+     * Public render method for RGB888 and PALETTE8 frames
+     */
+    public void render(byte[] colorData) {
+        if (colorMode != RGB888 && colorMode != PALETTE8)
+            throw new IllegalStateException("Frames in 8 bit pixel format expected");
+        if (colorMode == PALETTE8 && palette == null)
+            throw new IllegalStateException("Palette not set");
+        queueFrame(colorData, colorData.length);
+    }
+    
+    /**
+     * Public render method for RGB565 and RGB555 frames
+     */
+    public void render(short[] colorData) {
+        if (colorMode != RGB565 && colorMode != RGB555)
+            throw new IllegalStateException("Frames in 16 bit pixel format expected");
+        queueFrame(colorData, colorData.length);
+    }
+
+    /**
+     * Copies a frame into the decoder's buffer of the swap chain
+     * and makes it the latest complete frame.
+     *
+     * @param colorData the frame, an array of the negotiated format
+     * @param length    the length of colorData
+     */
+    private void queueFrame(Object colorData, int length) {
+        Object [] fb = frames;
+        if (fb == null)
+            return;
+
+        Object buf = fb[writeIdx];
+        if (buf == null) {
+            buf = newFrameBuffer();
+            fb[writeIdx] = buf;
+        }
+        int size = getFrameBufferLength();
+        System.arraycopy(colorData, 0, buf, 0, length < size ? length : size);
+
+        synchronized (swapLock) {
+            if (frames != fb)
+                return; // closed or re-initialized meanwhile
+            int t = readyIdx;
+            readyIdx = writeIdx;
+            writeIdx = t;
+            if (!pinnedFrames.isEmpty() && pinnedFrames.contains(fb[writeIdx]))
+                fb[writeIdx] = null; // still read by a snapshot
+            if (fresh)
+                framesDropped++;
+            fresh = true;
+            hasFrame = true;
+            framesRendered++;
+        }
 
         if (!pvis)
             return;
@@ -503,73 +678,269 @@ public final class MIDPVideoRenderer extends VideoRenderer
             mmItem.refresh(false);
         }
     }
-    
+
     /**
-     * Public render method
+     * Returns the number of array elements of a frame in the current format.
      */
-    public void render(byte[] colorData) {
-        throw new IllegalStateException("Only 32 bit pixel format supported");
+    private int getFrameBufferLength() {
+        int size = videoWidth * videoHeight;
+        return colorMode == RGB888 ? 3 * size : size;
     }
-    
+
     /**
-     * Public render method
+     * Allocates a frame buffer for the current format.
      */
-    public void render(short[] colorData) {
-        throw new IllegalStateException("Only 32 bit pixel format supported");
+    private Object newFrameBuffer() {
+        int length = getFrameBufferLength();
+        switch (colorMode) {
+            case RGB565:
+            case RGB555:
+                return new short[length];
+            case RGB888:
+            case PALETTE8:
+                return new byte[length];
+            default:
+                return new int[length];
+        }
+    }
+
+    /**
+     * Expands a frame of the current format to 32 bit pixels.
+     *
+     * @param frame a frame buffer of the swap chain
+     * @param dst   the buffer to reuse, may be null
+     * @return      dst or a newly allocated buffer with the pixels
+     */
+    private int [] toArgb(Object frame, int [] dst) {
+        int size = videoWidth * videoHeight;
+        if (dst == null || dst.length < size)
+            dst = new int[size];
+        switch (colorMode) {
+            case RGB565:
+                FormatConversionUtils.rgb565ToArgb((short[])frame, 0, dst, 0, size);
+                break;
+            case RGB555:
+                FormatConversionUtils.rgb555ToArgb((short[])frame, 0, dst, 0, size);
+                break;
+            case RGB888:
+                FormatConversionUtils.rgb888ToArgb((byte[])frame, 0, dst, 0, size);
+                break;
+            case PALETTE8:
+                FormatConversionUtils.paletteToArgb((byte[])frame, 0, palette, dst, 0, size);
+                break;
+            default:
+                System.arraycopy((int[])frame, 0, dst, 0, size);
+        }
+        return dst;
     }
 
     public void close() {
         if (!closed && canvas != null)
             mmHelper.unregisterPlayer(canvas, this);
-        if (rgbData != null)
-            synchronized (rgbData) {
-                rgbData = null;
-                scaledData = null;
-            }
-        //image = null;
+        synchronized (swapLock) {
+            frames = null;
+            hasFrame = false;
+            fresh = false;
+        }
+        paintData = null;
+        argbData = null;
+        scaledData = null;
         closed = true;
     }
 
     /**
-     * Scales an input rgb image to the destination size.
+     * Returns the number of frames passed to the renderer.
+     */
+    public int getRenderedFrameCount() {
+        return framesRendered;
+    }
+
+    /**
+     * Returns the number of frames that were replaced by a newer one
+     * before the paint thread could take them.
+     */
+    public int getDroppedFrameCount() {
+        return framesDropped;
+    }
+
+    /**
+     * Returns the number of paints that had no new frame to show
+     * and repeated the previous one.
+     */
+    public int getDuplicatedFrameCount() {
+        return framesDuplicated;
+    }
+
+    /**
+     * Takes the latest complete frame for painting.
+     * Paint thread only.
+     *
+     * @return the paint buffer or null if nothing has been rendered yet
+     */
+    private Object acquireFrame() {
+        synchronized (swapLock) {
+            if (frames == null || !hasFrame)
+                return null;
+            if (fresh) {
+                int t = paintIdx;
+                paintIdx = readyIdx;
+                readyIdx = t;
+                fresh = false;
+                scaledValid = false;
+            } else {
+                framesDuplicated++;
+            }
+            return frames[paintIdx];
+        }
+    }
+
+    /**
+     * Pins the latest complete frame for a snapshot.
+     *
+     * @return the frame buffer, to be passed to unpinFrame(),
+     *         or null if nothing has been rendered yet
      */
-    private void scaleToDest() {
+    private Object pinLatestFrame() {
+        synchronized (swapLock) {
+            if (frames == null || !hasFrame)
+                return null;
+            Object frame = frames[fresh ? readyIdx : paintIdx];
+            pinnedFrames.addElement(frame);
+            return frame;
+        }
+    }
+
+    private void unpinFrame(Object frame) {
+        synchronized (swapLock) {
+            pinnedFrames.removeElement(frame);
+        }
+    }
+
+    /**
+     * Returns a private copy of the latest complete frame,
+     * or null if nothing has been rendered yet.
+     */
+    private int [] copyLatestFrame() {
+        Object frame = pinLatestFrame();
+        if (frame == null)
+            return null;
+        try {
+            return toArgb(frame, null);
+        } finally {
+            unpinFrame(frame);
+        }
+    }
+
+    /**
+     * Returns the latest complete frame as raw pixels, converted
+     * directly from the format it was rendered in, or null if nothing
+     * has been rendered yet.
+     *
+     * @param format one of the byte[] formats of FormatConversionUtils
+     */
+    private byte [] copyLatestFrameRaw(int format) {
+        Object frame = pinLatestFrame();
+        if (frame == null)
+            return null;
+        try {
+            return toRaw(frame, format);
+        } finally {
+            unpinFrame(frame);
+        }
+    }
+
+    /**
+     * Converts a frame of the current format to raw pixels.
+     */
+    private byte [] toRaw(Object frame, int format) {
+        int size = videoWidth * videoHeight;
+        int pixelSize = FormatConversionUtils.pixelSize(format);
+        byte [] raw = new byte[size * pixelSize];
+        int srcFormat;
+        switch (colorMode) {
+            case RGB565:
+                srcFormat = FormatConversionUtils.RGB565;
+                break;
+            case RGB555:
+                srcFormat = FormatConversionUtils.RGB555;
+                break;
+            case RGB888:
+                if (format == FormatConversionUtils.RGB888) {
+                    System.arraycopy(frame, 0, raw, 0, raw.length);
+                    return raw;
+                }
+                srcFormat = FormatConversionUtils.RGB888;
+                break;
+            case PALETTE8:
+                frame = toArgb(frame, null);
+                srcFormat = FormatConversionUtils.ARGB;
+                break;
+            default:
+                srcFormat = FormatConversionUtils.ARGB;
+        }
+        // rows are contiguous in both buffers
+        FormatConversionUtils.convert(
+            frame, srcFormat, 0,
+            videoWidth * FormatConversionUtils.pixelSize(srcFormat),
+            raw, format, 0, videoWidth * pixelSize,
+            videoWidth, videoHeight);
+        return raw;
+    }
+
+    /**
+     * Forces the next paint to rescale the current frame.
+     */
+    private void invalidateScaledFrame() {
+        scaledValid = false;
+    }
+
+    /**
+     * Scales the frame being painted to the destination size.
+     * Paint thread only.
+     */
+    private void scaleToDest(int [] frame) {
         int ldw = 0;
         int ldh = 0;
         synchronized (dispBoundsLock) {
             ldw = dw;
             ldh = dh;
         }
-        if (rgbData != null)
-            synchronized (rgbData) { // To avoid interference with close()
-                scaled = ldw != videoWidth || ldh != videoHeight;
-                if (scaled) {
-                    if (scaledData == null || scaledData.length < ldw * ldh)
-                        scaledData = new int[ldw * ldh];
-                    // Scale using nearest neighbor
-                    int dp = 0;
-                    for (int y = 0; y < ldh; y++)
-                        for (int x = 0; x < ldw; x++)
-                            scaledData[dp++] = rgbData[((y * videoHeight) / ldh)
-                                        * videoWidth + ((x * videoWidth) / ldw)];
-                }
+        scaled = ldw != videoWidth || ldh != videoHeight;
+        if (scaled) {
+            if (scaledData == null || scaledData.length < ldw * ldh)
+                scaledData = new int[ldw * ldh];
+            // Scale using nearest neighbor
+            int dp = 0;
+            for (int y = 0; y < ldh; y++) {
+                int sp = ((y * videoHeight) / ldh) * videoWidth;
+                for (int x = 0; x < ldw; x++)
+                    scaledData[dp++] = frame[sp + (x * videoWidth) / ldw];
             }
+        }
+        scaledValid = true;
     }
 
     /**
-     * Scale an image to the destination size. This first gets the
-     * pixels from the image and then uses the other scaleToDist()
-     * to do the scaling.
+     * Takes the latest frame and prepares it for drawing.
+     * Paint thread only.
+     *
+     * @return the frame to draw at source size, or null if nothing is there
      */
-    /*private void scaleToDest(Image img) {
-        if (rgbData == null)
-            rgbData = new int[videoWidth * videoHeight];
-        int width = img.getWidth();
-        int height = img.getHeight();
-        // REVISIT: width and height need to be stored...
-        img.getRGB(rgbData, 0, videoWidth, 0, 0, width, height);
-        scaleToDest();
-    }*/
+    private int [] prepareFrame() {
+        Object frame = acquireFrame();
+        if (frame == null)
+            return null;
+        if (!scaledValid) {
+            if (colorMode == XRGB888) {
+                paintData = (int [])frame;
+            } else {
+                argbData = toArgb(frame, argbData);
+                paintData = argbData;
+            }
+            scaleToDest(paintData);
+        }
+        return paintData;
+    }
 
     /****************************************************************
      * MIDPVideoPainter interface
@@ -579,11 +950,9 @@ public final class MIDPVideoRenderer extends VideoRenderer
      */
     public void paintVideo(Graphics g) {
         // Don't paint if Canvas visible flag is false
-        if (!pvis || !cvis || painting)
+        if (!pvis || !cvis)
             return;
         
-        painting = true;
-        
         // Save the clip region
         int cx = g.getClipX();
         int cy = g.getClipY();
@@ -600,23 +969,20 @@ public final class MIDPVideoRenderer extends VideoRenderer
             if (h > videoHeight)
                 h = videoHeight;
             try {
-                if (rgbData != null) {
-                    synchronized (rgbData) {
-                        if (scaled) {
-                            g.drawRGB(scaledData, 0, dw, dx, dy, dw, dh, useAlpha);
-                        } else {
-                            g.drawRGB(rgbData, 0, videoWidth, dx, dy, w, h, useAlpha);
-                        }
+                int [] frame = prepareFrame();
+                if (frame != null) {
+                    if (scaled) {
+                        g.drawRGB(scaledData, 0, dw, dx, dy, dw, dh, useAlpha);
+                    } else {
+                        g.drawRGB(frame, 0, videoWidth, dx, dy, w, h, useAlpha);
                     }
                 }
             } finally {
                 // Revert the clip region
                 g.setClip(cx, cy, cw, ch);
-                painting = false;
             }
         } else {
             g.setClip(cx, cy, cw, ch);
-            painting = false;
         }
         if (TRACE_FRAMERATE) {
             if (frameStartTime == 0) {
@@ -668,20 +1034,17 @@ public final class MIDPVideoRenderer extends VideoRenderer
 
         protected void paint(Graphics g, int w, int h) {
             // Don't paint if VideoControl visible flag is false
-            if (!pvis || painting)
+            if (!pvis)
                 return;
 
-            painting = true;
-            if (rgbData != null) {
-                synchronized (rgbData) {
-                    if (scaled) {
-                        g.drawRGB(scaledData, 0, dw, 0, 0, dw, dh, useAlpha);
-                    } else {
-                        g.drawRGB(rgbData, 0, videoWidth, 0, 0, videoWidth, videoHeight, useAlpha);
-                    }
+            int [] frame = prepareFrame();
+            if (frame != null) {
+                if (scaled) {
+                    g.drawRGB(scaledData, 0, dw, 0, 0, dw, dh, useAlpha);
+                } else {
+                    g.drawRGB(frame, 0, videoWidth, 0, 0, videoWidth, videoHeight, useAlpha);
                 }
             }
-            painting = false;
         }
 
         protected int getMinContentWidth() {
@@ -82,6 +82,8 @@ class MMEventListener implements EventListener {
         case EVENT_MEDIA_DURATION_UPDATED:
             p = HighLevelPlayer.get(nevt.intParam1);
             if (p != null) {
+                // new or streamed content may carry new metadata
+                p.notifyMetaDataChanged();
                 p.sendEvent(PlayerListener.DURATION_UPDATED, new Long(nevt.intParam2 * 1000));
             }
             break;
@@ -134,6 +136,8 @@ class MMEventListener implements EventListener {
         case EVENT_MEDIA_BUFFERING_STOPPED:
             p = HighLevelPlayer.get(nevt.intParam1);
             if (p != null) {
+                // new or streamed content may carry new metadata
+                p.notifyMetaDataChanged();
                 p.sendEvent(PlayerListener.BUFFERING_STOPPED, new Long(nevt.intParam2 * 1000));
             }
             break;
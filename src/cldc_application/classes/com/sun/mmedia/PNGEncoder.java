@@ -24,45 +24,206 @@
 
 package com.sun.mmedia;
 
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
- * Wrapper class for native JPEG encoder.
+ * PNG encoder for snapshots. The byte array variant wraps the native
+ * encoder, the stream variant is written in Java and writes the image
+ * a strip of rows at a time.
  * 
  */
 class PNGEncoder  extends Encoder {
     public static final String formatString = "png";
         
     public static byte[] encode(int[] rgbData, int width, int height, String encodeParams) {
-        String widthParam = getParamForFormat(encodeParams, formatString, widthString);
-        String heightParam = getParamForFormat(encodeParams, formatString, heightString);
-
-        int targetWidth = width;
-        try {
-            targetWidth = Integer.parseInt(widthParam);        
-        } catch (NumberFormatException ex) {
-            // Intentionally ignored
+        int targetWidth = getIntParamForFormat(encodeParams, formatString, widthString, width);
+        int targetHeight = getIntParamForFormat(encodeParams, formatString, heightString, height);
+
+        // converted and scaled in one pass
+        byte [] arr = toRgb(rgbData, width, height, targetWidth, targetHeight);
+
+        return encode0(arr, targetWidth, targetHeight);
+    }
+
+    /** Size of the pixel data encoded at once by the streaming encoder */
+    private static final int STRIP_BYTES = 16 * 1024;
+
+    /** Largest length of a stored deflate block */
+    private static final int MAX_STORED = 65535;
+
+    private static final byte[] SIGNATURE = {
+        (byte)137, 80, 78, 71, 13, 10, 26, 10
+    };
+
+    private static int[] crcTable;
+
+    /**
+     * Encodes a frame as PNG straight into a stream.
+     * <p>
+     * The frame is scaled and converted a strip of rows at a time and
+     * every strip is written as an IDAT chunk, so only a few rows are
+     * held in memory. CLDC has no deflater, so the image data is
+     * stored in uncompressed deflate blocks.
+     *
+     * @param rgbData      xRGB pixels, width * height
+     * @param width        frame width
+     * @param height       frame height
+     * @param encodeParams the image type string with optional
+     *                     width and height parameters
+     * @param stream       receives the PNG image
+     * @exception IOException if writing fails
+     */
+    public static void encode(int[] rgbData, int width, int height,
+                              String encodeParams, OutputStream stream)
+            throws IOException {
+        int targetWidth = getIntParamForFormat(encodeParams, formatString, widthString, width);
+        int targetHeight = getIntParamForFormat(encodeParams, formatString, heightString, height);
+
+        Output out = new Output(stream);
+        out.write(SIGNATURE, 0, SIGNATURE.length);
+
+        // IHDR: 8 bit RGB, no interlace
+        byte[] header = new byte[13];
+        putInt(header, 0, targetWidth);
+        putInt(header, 4, targetHeight);
+        header[8] = 8;
+        header[9] = 2;
+        writeChunk(out, "IHDR", header, 0, header.length);
+
+        int lineBytes = 1 + 3 * targetWidth;
+        int stripRows = STRIP_BYTES / lineBytes;
+        if (stripRows < 1) {
+            stripRows = 1;
+        } else if (stripRows > targetHeight) {
+            stripRows = targetHeight;
+        }
+        byte[] strip = new byte[stripRows * lineBytes];
+        int[] row = new int[targetWidth];
+        RowScaler scaler = new RowScaler(rgbData, width, height,
+                                         targetWidth, targetHeight);
+
+        int adlerA = 1, adlerB = 0;
+        boolean first = true;
+        for (int y = 0; y < targetHeight; ) {
+            int rows = targetHeight - y < stripRows ? targetHeight - y : stripRows;
+            int rawLength = rows * lineBytes;
+            int idx = 0;
+            for (int i = 0; i < rows; i++, y++) {
+                scaler.getRow(y, row);
+                strip[idx++] = 0; // filter type None
+                for (int x = 0; x < targetWidth; x++) {
+                    int p = row[x];
+                    strip[idx++] = (byte)(p >> 16);
+                    strip[idx++] = (byte)(p >> 8);
+                    strip[idx++] = (byte)p;
+                }
+            }
+
+            // checksum of the uncompressed data, for the zlib trailer;
+            // the sums are reduced before they can overflow an int
+            for (int i = 0; i < rawLength; ) {
+                int end = i + 3800 < rawLength ? i + 3800 : rawLength;
+                for (; i < end; i++) {
+                    adlerA += strip[i] & 0xFF;
+                    adlerB += adlerA;
+                }
+                adlerA %= 65521;
+                adlerB %= 65521;
+            }
+
+            boolean last = y == targetHeight;
+            int blocks = (rawLength + MAX_STORED - 1) / MAX_STORED;
+            int length = (first ? 2 : 0) + 5 * blocks + rawLength + (last ? 4 : 0);
+
+            int crc = startChunk(out, "IDAT", length);
+            if (first) {
+                // zlib header: deflate, 32K window, no dictionary
+                crc = writeCrc(out, crc, 0x78);
+                crc = writeCrc(out, crc, 0x01);
+            }
+            for (int off = 0; off < rawLength; off += MAX_STORED) {
+                int len = rawLength - off < MAX_STORED ? rawLength - off : MAX_STORED;
+                crc = writeCrc(out, crc, (last && off + len == rawLength) ? 1 : 0);
+                crc = writeCrc(out, crc, len);
+                crc = writeCrc(out, crc, len >> 8);
+                crc = writeCrc(out, crc, ~len);
+                crc = writeCrc(out, crc, ~len >> 8);
+                crc = writeCrc(out, crc, strip, off, len);
+            }
+            if (last) {
+                int adler = (adlerB << 16) | adlerA;
+                crc = writeCrc(out, crc, adler >> 24);
+                crc = writeCrc(out, crc, adler >> 16);
+                crc = writeCrc(out, crc, adler >> 8);
+                crc = writeCrc(out, crc, adler);
+            }
+            out.writeInt(~crc);
+            first = false;
         }
 
-        int targetHeight = height;
-        try {
-            targetHeight = Integer.parseInt(heightParam);        
-        } catch (NumberFormatException ex) {
-            // Intentionally ignored
+        writeChunk(out, "IEND", null, 0, 0);
+        out.flush();
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte)(v >> 24);
+        b[off + 1] = (byte)(v >> 16);
+        b[off + 2] = (byte)(v >> 8);
+        b[off + 3] = (byte)v;
+    }
+
+    private static void writeChunk(Output out, String type,
+                                   byte[] data, int off, int len) throws IOException {
+        int crc = startChunk(out, type, len);
+        if (len > 0) {
+            crc = writeCrc(out, crc, data, off, len);
         }
+        out.writeInt(~crc);
+    }
 
-        byte [] arr = new byte[3 * rgbData.length];
-        int idx = 0;
-        for (int i = 0; i < rgbData.length; i++) {
-            arr[idx++] = (byte)((rgbData[i] >> 16) & 0xFF);
-            arr[idx++] = (byte)((rgbData[i] >> 8) & 0xFF);
-            arr[idx++] = (byte)(rgbData[i] & 0xFF);
+    /**
+     * Writes the chunk length and type.
+     *
+     * @return the CRC state after the type
+     */
+    private static int startChunk(Output out, String type, int length) throws IOException {
+        out.writeInt(length);
+        int crc = 0xFFFFFFFF;
+        for (int i = 0; i < 4; i++) {
+            crc = writeCrc(out, crc, type.charAt(i));
         }
-        
-        if (targetHeight != height || targetWidth != width) {
-            arr = scale(arr, width, height, targetWidth, targetHeight);
+        return crc;
+    }
+
+    private static int writeCrc(Output out, int crc, int b) throws IOException {
+        out.write(b);
+        return getCrcTable()[(crc ^ b) & 0xFF] ^ (crc >>> 8);
+    }
+
+    private static int writeCrc(Output out, int crc,
+                                byte[] data, int off, int len) throws IOException {
+        out.write(data, off, len);
+        int[] table = getCrcTable();
+        for (int end = off + len; off < end; off++) {
+            crc = table[(crc ^ data[off]) & 0xFF] ^ (crc >>> 8);
         }
+        return crc;
+    }
 
-        return encode0(arr, targetWidth, targetHeight);
+    private static synchronized int[] getCrcTable() {
+        if (crcTable == null) {
+            int[] table = new int[256];
+            for (int n = 0; n < 256; n++) {
+                int c = n;
+                for (int k = 0; k < 8; k++) {
+                    c = (c & 1) != 0 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+                }
+                table[n] = c;
+            }
+            crcTable = table;
+        }
+        return crcTable;
     }
 
     private static native byte[] encode0(byte[] rgbData, int w, int h);
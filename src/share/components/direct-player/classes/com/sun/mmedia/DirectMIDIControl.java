@@ -27,6 +27,9 @@ package com.sun.mmedia;
 
 import javax.microedition.media.*;
 import javax.microedition.media.control.*;
+import com.sun.mmedia.control.BatchMIDIControl;
+import com.sun.mmedia.control.MIDIBankQueryControl;
+import java.util.Hashtable;
 
 /**
  * Implement all of MIDI related controls like :
@@ -40,6 +43,7 @@ class DirectMIDIControl implements DirectControls {
     private native void nSetProgram(int handle, int channel, int bank, int program);
     private native void nShortMidiEvent(int handle, int type, int data1, int data2);
     private native int nLongMidiEvent(int handle, byte[] data, int offset, int length);
+    private native void nShortMidiEvents(int handle, int[] events, int offset, int count);
 
     // RateControl
     private native int nGetMaxRate(int handle);
@@ -64,6 +68,11 @@ class DirectMIDIControl implements DirectControls {
     private native int nGetProgramName(int handle, int bank, int prog, byte[] progname);
     private native int nGetProgramList(int handle, int bank, int[] proglist);
     private native int nGetProgram(int handle, int channel, int[] program);
+    private native int nGetProgramNames(int handle, int bank, int[] progs, int count,
+                                        byte[] names, int[] lengths);
+
+    /** Size of the buffer for a program or key name */
+    private static final int NAME_SIZE = 64;
 
     DirectMIDIControl(HighLevelPlayer p) {
         _player = p;
@@ -137,7 +146,17 @@ class DirectMIDIControl implements DirectControls {
     public synchronized void playerStopped() {
     }
 
+    /**
+     * Stops the event dispatcher before the native handle goes away.
+     * A batch the dispatcher is sending holds this control's monitor,
+     * so it completes before the player is detached.
+     */
     public synchronized void playerClosed() {
+        synchronized (eventLock) {
+            dueCount = 0;
+            closed = true;
+            eventLock.notify();
+        }
         _player = null;
     }
 
@@ -152,7 +171,7 @@ class DirectMIDIControl implements DirectControls {
         return midiCtl;
     }
 
-    class MIDIControlImpl implements MIDIControl {
+    class MIDIControlImpl implements BatchMIDIControl, MIDIBankQueryControl {
         public synchronized boolean isBankQuerySupported() {
             return nIsBankQuerySupported(_player.getNativeHandle());
         }
@@ -174,17 +193,21 @@ class DirectMIDIControl implements DirectControls {
 
             checkState();
 
-            int[] bl1 = new int[20];
+            int idx = custom ? 1 : 0;
+            if (bankLists[idx] == null) {
+                int[] bl1 = new int[20];
 
-            int len = nGetBankList(_player.getNativeHandle(), custom, bl1);
-            if(len < 0) throw new MediaException("BankList failure");
+                int len = nGetBankList(_player.getNativeHandle(), custom, bl1);
+                if(len < 0) throw new MediaException("BankList failure");
 
-            int[] bl2 = new int[len];
+                int[] bl2 = new int[len];
 
-            for(int i=0; i<len; i++)
-                bl2[i] = bl1[i];
+                for(int i=0; i<len; i++)
+                    bl2[i] = bl1[i];
 
-            return bl2;
+                bankLists[idx] = bl2;
+            }
+            return copy(bankLists[idx]);
         }
 
         public synchronized String getKeyName(int bank, int prog, int key) throws MediaException {
@@ -196,12 +219,16 @@ class DirectMIDIControl implements DirectControls {
             if((key < 0) || (key > 127))
                 throw new IllegalArgumentException("key out of range");
 
-            byte[] str = new byte[64];
-
-            int len = nGetKeyName(_player.getNativeHandle(), bank, prog, key, str);
-            if(len < 0) throw new MediaException("KeyName failure");
+            Integer k = new Integer((bank << 14) | (prog << 7) | key);
+            String name = (String)keyNames.get(k);
+            if (name == null) {
+                int len = nGetKeyName(_player.getNativeHandle(), bank, prog, key, nameBuf);
+                if(len < 0) throw new MediaException("KeyName failure");
 
-            return new String(str, 0, len);
+                name = new String(nameBuf, 0, len);
+                keyNames.put(k, name);
+            }
+            return name;
         }
 
         public synchronized String getProgramName(int bank, int prog) throws MediaException {
@@ -210,12 +237,16 @@ class DirectMIDIControl implements DirectControls {
             checkBank(bank);
             checkProgram(prog);
 
-            byte[] str = new byte[64];
-
-            int len = nGetProgramName(_player.getNativeHandle(), bank, prog, str);
-            if(len < 0) throw new MediaException("ProgramName failure");
+            Integer k = new Integer((bank << 7) | prog);
+            String name = (String)programNames.get(k);
+            if (name == null) {
+                int len = nGetProgramName(_player.getNativeHandle(), bank, prog, nameBuf);
+                if(len < 0) throw new MediaException("ProgramName failure");
 
-            return new String(str, 0, len);
+                name = new String(nameBuf, 0, len);
+                programNames.put(k, name);
+            }
+            return name;
         }
 
         public synchronized int[] getProgramList(int bank) throws MediaException {
@@ -223,16 +254,72 @@ class DirectMIDIControl implements DirectControls {
             checkState();
             checkBank(bank);
 
-            int[] pl1 = new int[200];
+            return copy(programList(bank));
+        }
 
-            int len = nGetProgramList(_player.getNativeHandle(), bank, pl1);
-            if(len < 0) throw new MediaException("ProgramList failure");
+        public synchronized void prefetchBank(int bank) throws MediaException {
+            checkState();
+            checkBank(bank);
 
-            int[] pl2 = new int[len];
+            int[] progs = programList(bank);
+            int n = 0;
+            for (int i = 0; i < progs.length; i++) {
+                if (!programNames.containsKey(new Integer((bank << 7) | progs[i]))) {
+                    n++;
+                }
+            }
+            if (n == 0) {
+                return;
+            }
 
-            for(int i=0; i<len; i++)
-                pl2[i] = pl1[i];
+            int[] missing = new int[n];
+            n = 0;
+            for (int i = 0; i < progs.length; i++) {
+                if (!programNames.containsKey(new Integer((bank << 7) | progs[i]))) {
+                    missing[n++] = progs[i];
+                }
+            }
+            byte[] names = new byte[n * NAME_SIZE];
+            int[] lengths = new int[n];
+            if (nGetProgramNames(_player.getNativeHandle(), bank, missing, n,
+                                 names, lengths) < 0) {
+                throw new MediaException("ProgramName failure");
+            }
+            for (int i = 0; i < n; i++) {
+                // names that failed are left to getProgramName
+                if (lengths[i] >= 0) {
+                    programNames.put(new Integer((bank << 7) | missing[i]),
+                        new String(names, i * NAME_SIZE, lengths[i]));
+                }
+            }
+        }
+
+        public synchronized void invalidateBankCache() {
+            bankLists[0] = bankLists[1] = null;
+            programLists.clear();
+            programNames.clear();
+            keyNames.clear();
+        }
+
+        /**
+         * Returns the cached program list of a bank, querying it if needed.
+         */
+        private int[] programList(int bank) throws MediaException {
+            Integer k = new Integer(bank);
+            int[] pl2 = (int[])programLists.get(k);
+            if (pl2 == null) {
+                int[] pl1 = new int[200];
+
+                int len = nGetProgramList(_player.getNativeHandle(), bank, pl1);
+                if(len < 0) throw new MediaException("ProgramList failure");
+
+                pl2 = new int[len];
 
+                for(int i=0; i<len; i++)
+                    pl2[i] = pl1[i];
+
+                programLists.put(k, pl2);
+            }
             return pl2;
         }
 
@@ -280,10 +367,51 @@ class DirectMIDIControl implements DirectControls {
             }
         }
 
+        public synchronized void shortMidiEvents(int[] events, int offset, int count) {
+            checkState();
+            if (events == null || offset < 0 || count < 0 ||
+                    (offset + count) * 2 > events.length) {
+                throw new IllegalArgumentException("Events are out of range");
+            }
+
+            int last = 0;
+            int immediate = 0;
+            for (int i = offset * 2; i < (offset + count) * 2; i += 2) {
+                int time = events[i];
+                int msg = events[i + 1];
+                if (time < last) {
+                    throw new IllegalArgumentException("Event offsets decrease");
+                }
+                if (time == 0) {
+                    immediate++;
+                }
+                last = time;
+                checkType(msg >>> TYPE_SHIFT);
+                checkData((msg >> DATA1_SHIFT) & 0xFF);
+                checkData(msg & 0xFF);
+            }
+
+            if (_player != null && _player.getNativeHandle() != 0) {
+                if (immediate > 0) {
+                    nShortMidiEvents(_player.getNativeHandle(), events, offset, immediate);
+                }
+                if (immediate < count) {
+                    scheduleEvents(events, offset + immediate, count - immediate);
+                }
+            }
+        }
+
+        public void cancelMidiEvents() {
+            cancelEvents();
+        }
+
         public synchronized int longMidiEvent(byte[] data, int offset, int length) {
             checkState();
             checkLongMidiEvent(data, offset, length);
 
+            // SysEx may load or change the sound bank
+            invalidateBankCache();
+
             if (_player != null && _player.getNativeHandle() != 0) {
                 return nLongMidiEvent(_player.getNativeHandle(), data, offset, length);
             } else {
@@ -292,6 +420,22 @@ class DirectMIDIControl implements DirectControls {
         }
     }
 
+    /* Bank query cache, guarded by the MIDIControlImpl */
+    private final int[][] bankLists = new int[2][];
+    /** Integer(bank) -> int[] programs */
+    private final Hashtable programLists = new Hashtable();
+    /** Integer(bank << 7 | program) -> String */
+    private final Hashtable programNames = new Hashtable();
+    /** Integer(bank << 14 | program << 7 | key) -> String */
+    private final Hashtable keyNames = new Hashtable();
+    private final byte[] nameBuf = new byte[NAME_SIZE];
+
+    private static int[] copy(int[] a) {
+        int[] b = new int[a.length];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
     // RateControl ///////////////////////////////////////////////////////
 
     private RateControlImpl rateCtl = null;
@@ -445,6 +589,134 @@ class DirectMIDIControl implements DirectControls {
         }
     }
 
+    // Scheduled short MIDI events ///////////////////////////////////////
+
+    /** The dispatcher exits after idling this long, in ms */
+    private static final long DISPATCHER_IDLE = 5000;
+
+    /** Guards the queue below */
+    private final Object eventLock = new Object();
+    /** Due times of the queued events, non-decreasing */
+    private long[] dueTimes = new long[32];
+    /** Queued events, packed like in BatchMIDIControl, with offset 0 */
+    private int[] dueEvents = new int[64];
+    private int dueCount;
+    /** Scratch copy of the due events handed to native */
+    private int[] sendEvents = new int[64];
+    private Thread dispatcher;
+    /** Set by playerClosed(), no more events are sent */
+    private boolean closed;
+
+    /**
+     * Queues events with non-decreasing offsets for the dispatcher.
+     */
+    private void scheduleEvents(int[] events, int offset, int count) {
+        long now = System.currentTimeMillis();
+        synchronized (eventLock) {
+            if (closed) {
+                return;
+            }
+            if (dueCount + count > dueTimes.length) {
+                int size = Math.max(dueTimes.length * 2, dueCount + count);
+                long[] t = new long[size];
+                int[] e = new int[size * 2];
+                System.arraycopy(dueTimes, 0, t, 0, dueCount);
+                System.arraycopy(dueEvents, 0, e, 0, dueCount * 2);
+                dueTimes = t;
+                dueEvents = e;
+                sendEvents = new int[size * 2];
+            }
+            // merge, the new events keep their order behind queued
+            // events due at the same time
+            int i = dueCount - 1;
+            int j = count - 1;
+            int k = dueCount + count - 1;
+            while (j >= 0) {
+                long t = now + events[(offset + j) * 2];
+                if (i >= 0 && dueTimes[i] > t) {
+                    dueTimes[k] = dueTimes[i];
+                    dueEvents[k * 2] = 0;
+                    dueEvents[k * 2 + 1] = dueEvents[i * 2 + 1];
+                    i--;
+                } else {
+                    dueTimes[k] = t;
+                    dueEvents[k * 2] = 0;
+                    dueEvents[k * 2 + 1] = events[(offset + j) * 2 + 1];
+                    j--;
+                }
+                k--;
+            }
+            dueCount += count;
+
+            if (dispatcher == null) {
+                dispatcher = new Thread(new EventDispatcher());
+                dispatcher.start();
+            } else {
+                eventLock.notify();
+            }
+        }
+    }
+
+    private void cancelEvents() {
+        synchronized (eventLock) {
+            dueCount = 0;
+            eventLock.notify();
+        }
+    }
+
+    /**
+     * Sends the queued events when they are due, all events due at
+     * the same time in one native call.
+     */
+    private class EventDispatcher implements Runnable {
+        public void run() {
+            while (true) {
+                int n = 0;
+                int[] send;
+                synchronized (eventLock) {
+                    if (dueCount == 0 && !closed) {
+                        try {
+                            eventLock.wait(DISPATCHER_IDLE);
+                        } catch (InterruptedException ie) {
+                            // check below
+                        }
+                    }
+                    if (dueCount == 0) {
+                        dispatcher = null;
+                        return;
+                    }
+                    long wait = dueTimes[0] - System.currentTimeMillis();
+                    if (wait > 0) {
+                        try {
+                            eventLock.wait(wait);
+                        } catch (InterruptedException ie) {
+                            // recheck
+                        }
+                        continue;
+                    }
+                    long now = System.currentTimeMillis();
+                    while (n < dueCount && dueTimes[n] <= now) {
+                        n++;
+                    }
+                    send = sendEvents;
+                    System.arraycopy(dueEvents, 0, send, 0, n * 2);
+                    dueCount -= n;
+                    System.arraycopy(dueTimes, n, dueTimes, 0, dueCount);
+                    System.arraycopy(dueEvents, n * 2, dueEvents, 0, dueCount * 2);
+                }
+
+                // under the monitor playerClosed() takes, so the
+                // handle can't be released during the call
+                synchronized (DirectMIDIControl.this) {
+                    int handle = (_player != null) ? _player.getNativeHandle() : 0;
+                    if (handle != 0) {
+                        nShortMidiEvents(handle, send, 0, n);
+                    }
+                }
+            }
+        }
+    }
+
     //////////////////////////////////////////////////////////////////////
     private void recalculateStopTime() {
         if (_player != null) {
@@ -25,83 +25,139 @@
 package com.sun.mmedia;
 
 import javax.microedition.media.control.MetaDataControl;
-import java.util.Vector;
+import java.util.Hashtable;
 
+/**
+ * MetaDataControl of the native players.
+ * <p>
+ * Keys and values are fetched from the native layer in one call the
+ * first time they are needed and then answered from a cache until
+ * the native player reports that its metadata may have changed.
+ */
 public class DirectMetaData implements MetaDataControl {    
     private int hNative;    
     private Object keysLock = new Object();
     private String [] keys;
     private boolean titleIsFake = false;
+
+    /** Cached values by key; keys without a value map to NO_VALUE */
+    private final Hashtable values = new Hashtable(7);
+    /** Marks a key that has no value */
+    private static final Object NO_VALUE = new Object();
+    /** True if keys and values have to be fetched again */
+    private boolean stale = true;
     
     private native int nGetKeyCount(int hNative);
-    private native String nGetKey(int hNative, int index);
-    private native String nGetKeyValue(int hNative, String key);
+
+    /**
+     * Fetches all keys and their values at once.
+     *
+     * @param pairs receives key and value of entry i at 2*i and 2*i+1;
+     *              a missing value is left null
+     * @return the number of entries filled in, or -1 on failure
+     */
+    private native int nGetKeyValues(int hNative, String[] pairs);
     
+    /**
+     * Refills the cache if it is stale. Has to be called holding keysLock.
+     */
     private void updateKeys() {
-        Vector vKeys = new Vector( 5 );
-        int nKeys = ( hNative != 0 ) ? nGetKeyCount( hNative ) : 0;
-
-        if (nKeys == 0) {
-            synchronized (keysLock) {
-                keys = new String[1];
-                keys[0] = TITLE_KEY;
-                titleIsFake = true;
-            }
+        if (!stale) {
             return;
         }
-        for( int i = 0; i < nKeys; i++ ) {
-            String key = nGetKey( hNative, i );
-            vKeys.addElement( key );
-        }
+        values.clear();
+        int nKeys = ( hNative != 0 ) ? nGetKeyCount( hNative ) : 0;
+        String[] pairs = null;
 
-        nKeys = vKeys.size();
+        if (nKeys > 0) {
+            pairs = new String[ 2 * nKeys ];
+            nKeys = nGetKeyValues( hNative, pairs );
+        }
 
-        synchronized( keysLock ) {
+        if (nKeys <= 0) {
+            keys = new String[1];
+            keys[0] = TITLE_KEY;
+            values.put(TITLE_KEY, "Unknown");
+            titleIsFake = true;
+        } else {
             if( keys == null || nKeys != keys.length ) {
                 keys = new String[ nKeys ];
             }
-
             for( int i = 0; i < nKeys; i++ ) {
-                keys[ i ] = (String)( vKeys.elementAt( i ) );
+                keys[ i ] = pairs[ 2 * i ];
+                Object value = pairs[ 2 * i + 1 ];
+                values.put( keys[ i ], ( value != null ) ? value : NO_VALUE );
             }
             titleIsFake = false;
         }
+        stale = false;
     }    
 
     DirectMetaData(int hNative) {
         this.hNative = hNative;
     }
 
+    /**
+     * Drops the cached metadata so that it is fetched again on the next
+     * query. Called when the native player reports that the metadata
+     * may have changed.
+     */
+    void invalidate() {
+        synchronized( keysLock ) {
+            stale = true;
+        }
+    }
+
     void playerClosed() {
-        hNative = 0;
-        keys = null;
+        synchronized( keysLock ) {
+            hNative = 0;
+            keys = null;
+            values.clear();
+            stale = true;
+        }
     }
 
     public String[] getKeys() {
-        updateKeys();
-        return keys;
+        synchronized( keysLock ) {
+            updateKeys();
+            String[] copy = new String[ keys.length ];
+            System.arraycopy( keys, 0, copy, 0, keys.length );
+            return copy;
+        }
     }
 
     public String getKeyValue(String key) {
         if (key == null) {
             throw new IllegalArgumentException("Key is null");
         }
-        updateKeys();
 
         synchronized( keysLock ) {
+            updateKeys();
+            Object value = values.get( key );
+            if( value == null ) {
+                throw new IllegalArgumentException("Key is invalid");
+            }
+            return ( value == NO_VALUE ) ? null : (String)value;
+        }
+    }
+
+    /**
+     * Returns all metadata at once.
+     *
+     * @return a new table of key to value; keys which have no value
+     *         are left out
+     */
+    public Hashtable getKeyValues() {
+        synchronized( keysLock ) {
+            updateKeys();
+            Hashtable all = new Hashtable( values.size() * 2 + 1 );
             for( int i = 0; i < keys.length; i++ ) {
-                if( key.equals( keys[ i ] ) ) {
-                    String s = nGetKeyValue( hNative, key );
-                    if( null == s ) {
-                        if (TITLE_KEY.equals(key) && titleIsFake) {
-                            s = "Unknown";
-                        }
-                    }
-                    return s;
+                Object value = values.get( keys[ i ] );
+                if( value != NO_VALUE ) {
+                    all.put( keys[ i ], value );
                 }
             }
+            return all;
         }
-
-        throw new IllegalArgumentException("Key is invalid");
     }
-}
\ No newline at end of file
+}
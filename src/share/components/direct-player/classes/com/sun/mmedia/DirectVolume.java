@@ -27,6 +27,7 @@ package com.sun.mmedia;
 
 import com.sun.j2me.log.Logging;
 import com.sun.j2me.log.LogChannels;
+import java.util.Vector;
 import javax.microedition.media.*;
 import javax.microedition.media.control.*;
 
@@ -41,6 +42,19 @@ public class DirectVolume implements VolumeControl {
     protected native boolean nIsMuted(int hNative);
     protected native boolean nSetMute(int hNative, boolean mute);
     protected native int nGetSystemVolume();
+    // Sets the volume of count players at once, failed levels are set to -1
+    private static native int nSetVolumes(int[] handles, int[] levels, int count);
+
+    /**
+     * The controls of all the open players from this VM,
+     * updated when the System Volume changes.
+     */
+    private static final Vector instances = new Vector();
+
+    /* scratch arrays for the batch, used by the System Volume worker only */
+    private static int[] batchHandles = new int[0];
+    private static int[] batchLevels = new int[0];
+    private static DirectVolume[] batchControls = new DirectVolume[0];
 
     private int _level = 100;
     private int _mute = -1;
@@ -53,6 +67,48 @@ public class DirectVolume implements VolumeControl {
         _hNative = hNative;
         if (_hNative != 0) {
             _systemLevel = nGetSystemVolume();
+            instances.addElement(this);
+        }
+    }
+
+    /**
+     * Applies the System Volume to all the open players from this VM
+     * with a single native call. Players already at that level are
+     * skipped.
+     */
+    static void applySystemVolume(int level) {
+        int n;
+        synchronized (instances) {
+            n = instances.size();
+            if (batchControls.length < n) {
+                batchControls = new DirectVolume[n];
+                batchHandles = new int[n];
+                batchLevels = new int[n];
+            }
+            instances.copyInto(batchControls);
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            DirectVolume v = batchControls[i];
+            batchControls[i] = null;
+            if (v._systemLevel == level || v._hNative == 0) {
+                continue;
+            }
+            v._systemLevel = level;
+            if (v._level == -1) {
+                continue;
+            }
+            batchHandles[count] = v._hNative;
+            batchLevels[count] = v._level * level / 100;
+            count++;
+        }
+
+        if (count > 0 && nSetVolumes(batchHandles, batchLevels, count) < count) {
+            if (Logging.REPORT_LEVEL <= Logging.ERROR) {
+                Logging.report(Logging.ERROR, LogChannels.LC_MMAPI,
+                    "set system volume failed for some players, volume=" + level);
+            }
         }
     }
     
@@ -76,6 +132,7 @@ public class DirectVolume implements VolumeControl {
 
     void playerClosed() {
     	_hNative = 0;
+        instances.removeElement(this);
     }
 
     void setSystemVolume(int level) {
@@ -0,0 +1,52 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+/**
+ * Receives the frames grabbed by a <code>FrameGrabber</code>.
+ * <p>
+ * The methods are called on the grabber thread. The frames come from
+ * a small pool: a consumer which keeps all of them makes the grabber
+ * drop (continuous mode) or wait for (burst mode) the next frames, so
+ * every frame has to be released as soon as it's no longer needed.
+ */
+public interface FrameConsumer {
+
+    /**
+     * Called for every grabbed frame.
+     *
+     * @param frame the frame, to be given back with
+     *              <code>frame.release()</code>
+     */
+    void frameGrabbed(VideoFrame frame);
+
+    /**
+     * Called once when grabbing ends, because the burst is complete,
+     * <code>FrameGrabber.stop()</code> was called or an error occurred.
+     *
+     * @param frames number of frames delivered
+     * @param error  the error description, or null
+     */
+    void grabFinished(int frames, String error);
+}
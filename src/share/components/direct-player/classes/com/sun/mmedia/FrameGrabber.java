@@ -0,0 +1,428 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.util.Vector;
+import javax.microedition.media.MediaException;
+
+/**
+ * Grabs a sequence of frames from a camera player and hands them to a
+ * <code>FrameConsumer</code> as raw pixels, either as a burst of a
+ * given number of frames or continuously until stopped.
+ * <p>
+ * Frames are taken through the snapshot path of the video source in
+ * the cheapest encoding it offers and delivered in buffers from a
+ * small pool which are recycled when the consumer releases them.
+ * Uncompressed BMP snapshots are unpacked straight into the pooled
+ * buffer; other encodings are decoded into a temporary image first.
+ * The pixel buffers are reused, but the platform still hands every
+ * snapshot over in a new byte array. When all buffers are held by
+ * the consumer, continuous grabbing drops frames while a burst waits
+ * for a buffer to come back.
+ */
+public final class FrameGrabber {
+
+    /** Number of pooled frames unless changed by setPoolSize() */
+    public static final int DEFAULT_POOL_SIZE = 3;
+
+    /**
+     * Snapshot encodings in order of preference: the cheaper to
+     * produce and decode, the better. BMP needs no image decoder.
+     */
+    private static final String[] PREFERRED_ENCODINGS = {
+        "bmp", "png"
+    };
+
+    private final VideoSource source;
+
+    /** All pooled frames */
+    private final Vector pool = new Vector(DEFAULT_POOL_SIZE);
+    private int poolSize = DEFAULT_POOL_SIZE;
+
+    /** Decoded pixels of YUV frames before conversion */
+    private int[] argbScratch;
+
+    private Thread grabThread;
+    private boolean stopRequested;
+    private int droppedFrames;
+
+    FrameGrabber(VideoSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Sets the number of pooled frames. Takes effect the next time
+     * grabbing is started.
+     */
+    public synchronized void setPoolSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        poolSize = size;
+    }
+
+    /**
+     * Grabs <code>count</code> frames, one every <code>interval</code>
+     * milliseconds or as fast as possible if the interval is 0.
+     *
+     * @throws IllegalStateException if the grabber is already running
+     */
+    public void startBurst(int count, int interval, int format,
+                           FrameConsumer consumer) throws MediaException {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Frame count must be positive");
+        }
+        start(count, interval, format, consumer);
+    }
+
+    /**
+     * Grabs frames until <code>stop()</code> is called, one every
+     * <code>interval</code> milliseconds or as fast as possible if
+     * the interval is 0.
+     *
+     * @throws IllegalStateException if the grabber is already running
+     */
+    public void startContinuous(int interval, int format,
+                                FrameConsumer consumer) throws MediaException {
+        start(0, interval, format, consumer);
+    }
+
+    /**
+     * Stops grabbing. The consumer gets <code>grabFinished()</code>
+     * after the frame in progress, if any.
+     */
+    public synchronized void stop() {
+        stopRequested = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isRunning() {
+        return grabThread != null;
+    }
+
+    /**
+     * Returns the number of frame slots skipped in continuous mode
+     * with an interval because no pooled frame was free, since
+     * grabbing was last started. Without an interval the grabber
+     * waits for a frame to be released instead.
+     */
+    public synchronized int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void start(final int count, final int interval, final int format,
+                       final FrameConsumer consumer) throws MediaException {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Consumer is null");
+        }
+        if (interval < 0) {
+            throw new IllegalArgumentException("Negative interval");
+        }
+        if (format != VideoFrame.ARGB && format != VideoFrame.YUV420) {
+            throw new IllegalArgumentException("Unsupported frame format");
+        }
+        final String encoding = chooseEncoding();
+        // once per session instead of once per frame
+        source.checkSnapshotPermission();
+        synchronized (this) {
+            if (grabThread != null) {
+                throw new IllegalStateException("Frame grabber is running");
+            }
+            stopRequested = false;
+            droppedFrames = 0;
+            while (pool.size() > poolSize) {
+                pool.removeElementAt(pool.size() - 1);
+            }
+            grabThread = new Thread() {
+                public void run() {
+                    grab(count, interval, format, encoding, consumer);
+                }
+            };
+            grabThread.start();
+        }
+    }
+
+    private void grab(int count, int interval, int format, String encoding,
+                      FrameConsumer consumer) {
+        ImageAccess ia = Configuration.getConfiguration().getImageAccessor();
+        int delivered = 0;
+        String error = null;
+        long start = System.currentTimeMillis();
+        int slot = 0;
+
+        try {
+            while (count == 0 || delivered < count) {
+                if (!waitUntil(start + (long)slot * interval)) {
+                    break;
+                }
+                long now = System.currentTimeMillis();
+                int sequence = slot;
+                if (interval > 0) {
+                    // catch up after a slow snapshot instead of bursting
+                    sequence = (int)((now - start) / interval);
+                    slot = sequence;
+                }
+                slot++;
+
+                // no free frame: don't waste a snapshot on it
+                VideoFrame frame = acquire(count != 0);
+                if (frame == null) {
+                    // a burst only gets null when stopped
+                    if (count != 0 || stopRequested()) {
+                        break;
+                    }
+                    if (interval > 0) {
+                        // this slot is lost, try again at the next one
+                        frameDropped();
+                    } else if (!waitForFreeFrame()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                boolean handedOver = false;
+                try {
+                    if (!fill(frame, format, encoding, sequence, now, ia)) {
+                        error = "Cannot decode '" + encoding + "' frame";
+                        break;
+                    }
+                    handedOver = true;
+                    delivered++;
+                    consumer.frameGrabbed(frame);
+                } finally {
+                    if (!handedOver) {
+                        recycle(frame);
+                    }
+                }
+            }
+        } catch (MediaException e) {
+            error = e.getMessage();
+        } catch (SecurityException e) {
+            error = e.getMessage();
+        } catch (RuntimeException e) {
+            error = e.toString();
+        } finally {
+            synchronized (this) {
+                grabThread = null;
+            }
+            consumer.grabFinished(delivered, error);
+        }
+    }
+
+    /**
+     * Takes a snapshot and converts it into a frame.
+     *
+     * @return false if the snapshot can't be decoded
+     */
+    private boolean fill(VideoFrame frame, int format, String encoding,
+                         int sequence, long now, ImageAccess ia)
+            throws MediaException {
+        // timed out by the player once the capture has started
+        byte[] data = source.queueVideoSnapshot(encoding, null).getData(0);
+        int w = FormatConversionUtils.bmpWidth(data);
+        int h;
+        Object image = null;
+        if (w > 0) {
+            h = FormatConversionUtils.bmpHeight(data);
+        } else {
+            // not through imageCreateFromByteArray: frames are never
+            // asked for twice, so they'd only churn the image cache
+            image = ia.imageCreateFromStream(
+                    new java.io.ByteArrayInputStream(data));
+            if (image == null) {
+                return false;
+            }
+            w = ia.getImageWidth(image);
+            h = ia.getImageHeight(image);
+        }
+        frame.setup(format, w, h, sequence, now);
+        int[] argb = frame.getPixels();
+        if (format == VideoFrame.YUV420) {
+            if (argbScratch == null || argbScratch.length < w * h) {
+                argbScratch = new int[w * h];
+            }
+            argb = argbScratch;
+        }
+        if (image == null) {
+            FormatConversionUtils.bmpToArgb(data, argb, 0, w);
+        } else if (ia instanceof ImagePixelAccess) {
+            ((ImagePixelAccess)ia).getRGBIntImageData(image, argb);
+        } else {
+            System.arraycopy(ia.getRGBIntImageData(image), 0, argb, 0, w * h);
+        }
+        if (format == VideoFrame.YUV420) {
+            FormatConversionUtils.argbToYuv420(argb, 0, w, w, h,
+                                               frame.getYUV(), 0);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the given system time.
+     *
+     * @return false if stop() was called
+     */
+    private synchronized boolean waitUntil(long time) {
+        long wait;
+        while (!stopRequested &&
+                (wait = time - System.currentTimeMillis()) > 0) {
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                stopRequested = true;
+            }
+        }
+        return !stopRequested;
+    }
+
+    private synchronized boolean stopRequested() {
+        return stopRequested;
+    }
+
+    private synchronized void frameDropped() {
+        droppedFrames++;
+    }
+
+    /**
+     * Waits until the consumer releases a frame, so grabbing as fast
+     * as possible doesn't spin while it holds all of them.
+     *
+     * @return false if stop() was called
+     */
+    private synchronized boolean waitForFreeFrame() {
+        while (!stopRequested && pool.size() >= poolSize) {
+            boolean free = false;
+            for (int i = 0; i < pool.size() && !free; i++) {
+                free = !((VideoFrame)pool.elementAt(i)).isInUse();
+            }
+            if (free) {
+                break;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                stopRequested = true;
+            }
+        }
+        return !stopRequested;
+    }
+
+    /**
+     * Takes a free frame from the pool, creating one if the pool
+     * isn't full yet.
+     *
+     * @param block wait for a frame to be released if none is free
+     * @return the frame, or null if none is free and block is false
+     *         or stop() was called while waiting
+     */
+    private synchronized VideoFrame acquire(boolean block) {
+        while (true) {
+            for (int i = 0; i < pool.size(); i++) {
+                VideoFrame f = (VideoFrame)pool.elementAt(i);
+                if (!f.isInUse()) {
+                    f.setInUse(true);
+                    return f;
+                }
+            }
+            if (pool.size() < poolSize) {
+                VideoFrame f = new VideoFrame(this);
+                f.setInUse(true);
+                pool.addElement(f);
+                return f;
+            }
+            if (!block) {
+                return null;
+            }
+            if (stopRequested) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                stopRequested = true;
+            }
+        }
+    }
+
+    synchronized void recycle(VideoFrame frame) {
+        if (frame.isInUse()) {
+            frame.setInUse(false);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Picks the snapshot type to grab frames with from the
+     * <code>encoding=...</code> entries of
+     * <code>video.snapshot.encodings</code>.
+     */
+    private static String chooseEncoding() throws MediaException {
+        String supported = System.getProperty("video.snapshot.encodings");
+        if (supported == null || supported.trim().length() == 0) {
+            throw new MediaException("No supported snapshot formats found");
+        }
+        Vector types = new Vector();
+        int pos = 0;
+        supported = supported.trim();
+        while (pos < supported.length()) {
+            int end = supported.indexOf(' ', pos);
+            if (end < 0) {
+                end = supported.length();
+            }
+            // raw types are converted from an encoded snapshot, which
+            // is what the grabber decodes itself
+            if (end > pos && FormatConversionUtils.rawSnapshotFormat(
+                    supported.substring(pos, end)) < 0) {
+                types.addElement(supported.substring(pos, end));
+            }
+            pos = end + 1;
+        }
+        if (types.isEmpty()) {
+            throw new MediaException("No supported snapshot formats found");
+        }
+        for (int i = 0; i < PREFERRED_ENCODINGS.length; i++) {
+            for (int j = 0; j < types.size(); j++) {
+                String type = (String)types.elementAt(j);
+                if (PREFERRED_ENCODINGS[i].equalsIgnoreCase(encodingOf(type))) {
+                    return type.toLowerCase();
+                }
+            }
+        }
+        return ((String)types.elementAt(0)).toLowerCase();
+    }
+
+    /**
+     * Returns the value of the <code>encoding</code> parameter
+     * of a snapshot type.
+     */
+    private static String encodingOf(String type) {
+        int start = type.indexOf("encoding=");
+        if (start < 0) {
+            return type;
+        }
+        start += "encoding=".length();
+        int end = type.indexOf('&', start);
+        return (end < 0) ? type.substring(start) : type.substring(start, end);
+    }
+}
@@ -140,6 +140,10 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      *  Description of the Field
      */
     final static String vocName = "VolumeControl";
+    /**
+     *  Description of the Field
+     */
+    final static String fpacName = "com.sun.mmedia.control.FramePacingControl";
 
     /**
      * An array containing all available JSR-135 controls in possible Players
@@ -159,6 +163,7 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
         tocName,
         dtocName,
         vocName,
+        fpacName,
         };
 
     /**
@@ -169,6 +174,12 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      */
     private static Vector possibleControlNames = null;
 
+    /**
+     * Full names of the possible controls by the short and full names
+     * they may be requested with. Built with possibleControlNames.
+     */
+    private static Hashtable controlNames = null;
+
 
     public PlayerStateSubscriber state_subscriber = null;
 
@@ -195,13 +206,31 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      */
     private static Hashtable mplayers = new Hashtable(4);
     /**
-     * table of player states
+     * guards vmPaused and the player snapshot of pauseAll/resumeAll;
+     * never held while taking a player's monitor
+     */
+    private static final Object suspendLock = new Object();
+    /**
+     * serializes pauseAll and resumeAll, which share the batch arrays
+     */
+    private static final Object batchLock = new Object();
+    /**
+     * the players of the current pauseAll/resumeAll batch, and the
+     * native handles of the ones paused or resumed together; reused
+     * and only grown with the number of players
+     */
+    private static HighLevelPlayer[] batchPlayers = new HighLevelPlayer[4];
+    private static int[] batchHandles = new int[4];
+
+    /**
+     * true if this player was stopped by pauseAll and is to be restarted
+     * by resumeAll
      */
-    private static Hashtable pstates = new Hashtable();
+    private boolean suspended = false;
     /**
-     * table of media times
+     * media time at which pauseAll stopped this player
      */
-    private static Hashtable mtimes = new Hashtable();
+    private long suspendTime;
 
     /**
      * VM paused?
@@ -222,9 +251,24 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
     final private static Object idLock = new Object();
     
     /**
-     * The task that is used to send the System Volume Changed event.
+     * The thread applying System Volume changes, null when idle.
+     */
+    private static Thread systemVolumeWorker = null;
+
+    /**
+     * True if a System Volume change hasn't been applied yet.
+     */
+    private static boolean systemVolumePending = false;
+
+    /**
+     * lock object for the System Volume state
+     */
+    final private static Object systemVolumeLock = new Object();
+
+    /**
+     * The System Volume worker exits after idling this long, in ms.
      */
-    private static Runnable changeSystemVolumeTask = null;
+    private static final long SYSTEM_VOLUME_IDLE = 5000;
     
     /**
      * System Volume level. This value will be set for all players from this VM.
@@ -232,21 +276,31 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
     private static int systemVolume = 100;
 
     // Init native library
-    private native int nInit(int appId, int pID, String URI)
+    static native int nInit(int appId, int pID, String URI)
                                             throws MediaException, IOException;
     // Terminate native library
-    private native int nTerm(int handle);
+    static native int nTerm(int handle);
     // Get Media Format
-    private native String nGetMediaFormat(int handle);
+    static native String nGetMediaFormat(int handle);
     // Need media Download in Java side?
-    private native boolean nIsHandledByDevice(int handle);
+    static native boolean nIsHandledByDevice(int handle);
 
     // Realize native player
-    private native void nRealize(int handle, String mime) throws
+    static native void nRealize(int handle, String mime) throws
             MediaException;
 
     private static String PL_ERR_SH = "Cannot create a Player: ";
     
+    /**
+     * Allocates the ID identifying a native player in native events.
+     */
+    static int nextPlayerId() {
+        synchronized (idLock) {
+            pcount = (pcount + 1) % 32767;
+            return pcount;
+        }
+    }
+
     private void setHandledByJava()
     {
         handledByJava = true;
@@ -264,10 +318,7 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
         // Get current application ID to support MVM
         int appId = AppIsolate.getIsolateId();
 
-        synchronized (idLock) {
-            pcount = (pcount + 1) % 32767;
-            pID = pcount;
-        }
+        pID = nextPlayerId();
 
         locator = source.getLocator();
         hNative = nInit(appId, pID, locator);
@@ -362,6 +413,14 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
             lowLevelPlayer.doNotifySnapshotFinished();
         }
     }
+
+    void notifyMetaDataChanged()
+    {
+        if( null != lowLevelPlayer )
+        {
+            lowLevelPlayer.doMetaDataChanged();
+        }
+    }
             
     void continueDownload() {
         /* predownload media data to fill native buffers */
@@ -390,6 +449,12 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
     final private Object timeLock = new Object();
     private boolean useSystemTime = true;
 
+    /**
+     * Locks the media time to the master <code>TimeBase</code>,
+     * null if the player runs on its own clock.
+     */
+    private TimeBaseSlave slave;
+
     /**
      * Get the current time of this <code>TimeBase</code>.  The values
      * returned must be non-negative and non-decreasing over time.
@@ -558,6 +623,9 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
                 offset = System.currentTimeMillis() * 1000L - sysOffset;
             }
         }
+        if (!started && slave != null) {
+            slave.stop();
+        }
     }
 
     protected MediaDownload mediaDownload = null;
@@ -868,15 +936,25 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
             throw new MediaException("start");
         }
 
+        started();
+    };
+
+    /**
+     * Moves the player to STARTED once the low level player runs,
+     * by start() or by a resumeAll batch.
+     */
+    private void started() {
         setState( STARTED );
+        if (slave != null) {
+            slave.start();
+        }
         sendEvent(PlayerListener.STARTED, new Long(getMediaTime()));
 
         // Finish any pending startup stuff in subclass
         // Typically used to start any threads that might potentially
         // generate events before the STARTED event is delivered
         lowLevelPlayer.doPostStart();
-
-    };
+    }
 
     protected boolean hasToneSequenceSet = false;
 
@@ -921,12 +999,22 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
         lowLevelPlayer.doPreStop();
         lowLevelPlayer.doStop();
 
+        stopped(getMediaTime());
+    }
+
+    /**
+     * Moves the player to PREFETCHED once the low level player has
+     * stopped, by stop() or by a pauseAll batch.
+     *
+     * @param  time  the media time reported with the STOPPED event
+     */
+    private void stopped(long time) {
         // Update the time base to use the system time
         // before stopping.
         updateTimeBase(false);
 
         setState( PREFETCHED );
-        sendEvent(PlayerListener.STOPPED, new Long(getMediaTime()));
+        sendEvent(PlayerListener.STOPPED, new Long(time));
     }
 
     /**
@@ -1073,18 +1161,25 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      * <code>Player</code>.
      * @see #getTimeBase
      */
-    public void setTimeBase(TimeBase master) throws MediaException {
+    public synchronized void setTimeBase(TimeBase master) throws MediaException {
         chkClosed(true);
         if (state == STARTED) {
             throw new IllegalStateException("Cannot call setTimeBase on a player in the STARTED state");
         }
 
-        if (master == null) {
+        if (master == null || master == this) {
+            slave = null;
+            lowLevelPlayer.setTimeBase(null);
             return;
         }
-        if (master != this) {
+        // Slaving two players to each other would make them chase
+        // each other's corrections
+        if (master instanceof HighLevelPlayer &&
+                ((HighLevelPlayer)master).getTimeBase() == this) {
             throw new MediaException("Incompatible TimeBase");
         }
+        slave = new TimeBaseSlave(this, master);
+        lowLevelPlayer.setTimeBase(master);
     };
 
     /**
@@ -1097,9 +1192,92 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      */
     public TimeBase getTimeBase() {
         chkClosed(true);
-        return this;
+        TimeBaseSlave s = slave;
+        return (s == null) ? (TimeBase)this : s.getMaster();
     };
 
+    /**
+     * Returns the master <code>TimeBase</code> set with
+     * <code>setTimeBase</code>, or null if the player runs on its own
+     * clock. Unlike <code>getTimeBase</code> it may be called while
+     * the player is being realized.
+     */
+    TimeBase getMasterTimeBase() {
+        TimeBaseSlave s = slave;
+        return (s == null) ? null : s.getMaster();
+    }
+
+    /**
+     * Gets the drift of this <code>Player</code> against its master
+     * <code>TimeBase</code> as measured last.
+     *
+     * @return the drift in microseconds, positive if the player is ahead
+     * of the master, or 0 if the player isn't slaved.
+     */
+    public long getTimeBaseDrift() {
+        TimeBaseSlave s = slave;
+        return (s == null) ? 0 : s.getDrift();
+    }
+
+    /**
+     * Starts a group of <code>Player</code>s on the same tick of a
+     * common <code>TimeBase</code>.
+     * <p>
+     * All players are prefetched first. Players which run on their own
+     * clock are then slaved to the <code>TimeBase</code> of the first
+     * player, so the first player acts as the master clock. All slaves
+     * are anchored at the same master time before any player is started,
+     * so the time it takes to start the others is taken out again by the
+     * drift correction instead of adding up.
+     *
+     * @param players the players to start, the first one being the master
+     * @exception IllegalArgumentException Thrown if a player wasn't
+     * created by this implementation.
+     * @exception MediaException Thrown if a player cannot be prefetched,
+     * slaved or started.
+     */
+    public static void startSynchronized(Player[] players) throws MediaException {
+        HighLevelPlayer[] group = new HighLevelPlayer[players.length];
+        for (int i = 0; i < players.length; i++) {
+            if (!(players[i] instanceof HighLevelPlayer)) {
+                throw new IllegalArgumentException("Foreign player");
+            }
+            group[i] = (HighLevelPlayer)players[i];
+        }
+        if (group.length == 0) {
+            return;
+        }
+        for (int i = 0; i < group.length; i++) {
+            group[i].prefetch();
+        }
+
+        TimeBase master = group[0].getTimeBase();
+        for (int i = 1; i < group.length; i++) {
+            if (group[i].getState() != STARTED &&
+                    group[i].getTimeBase() == group[i]) {
+                group[i].setTimeBase(master);
+            }
+        }
+
+        // The master player has to run before its clock is sampled,
+        // otherwise its own start latency would end up in every slave
+        for (int i = 0; i < group.length; i++) {
+            if (group[i].slave == null) {
+                group[i].start();
+            }
+        }
+        long tick = master.getTime();
+        for (int i = 0; i < group.length; i++) {
+            TimeBaseSlave s = group[i].slave;
+            if (s != null && group[i].getState() != STARTED) {
+                s.anchorAt(tick);
+            }
+        }
+        for (int i = 0; i < group.length; i++) {
+            group[i].start();
+        }
+    }
+
     /**
      * Sets the <code>Player</code>'s&nbsp;<i>media time</i>.
      * <p>
@@ -1436,10 +1614,37 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
                 }
             }
 
+            controlNames = new Hashtable( possibleControlNames.size() * 4 );
+            for( int i = 0; i < possibleControlNames.size(); i++ )
+            {
+                String name = ( String )possibleControlNames.elementAt( i );
+                controlNames.put( name, name );
+            }
+            for( int i = 0; i < allJsr135Ctrls.length; i++ )
+            {
+                controlNames.put( allJsr135Ctrls[ i ],
+                        getFullControlName( allJsr135Ctrls[ i ] ) );
+            }
+
         }
         return possibleControlNames;
     }
 
+    /**
+     * Resolves the name a control is requested with.
+     *
+     * @return the full name of the control, or null if no player
+     *         can have such a control
+     */
+    private static synchronized String getPossibleControlName( String name )
+    {
+        if( null == controlNames )
+        {
+            getPossibleControlNames();
+        }
+        return ( String )controlNames.get( name );
+    }
+
     // Prepend the package name if the type given does not
     // have the package prefix.
     private static String getFullControlName( String name )
@@ -1470,7 +1675,12 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
             throw new IllegalArgumentException();
         }
 
-        String fullName = getFullControlName( type );
+        String fullName = getPossibleControlName( type );
+        boolean possible = ( null != fullName );
+        if( !possible )
+        {
+            fullName = getFullControlName( type );
+        }
 
         Control c = null;
         synchronized( this )
@@ -1478,7 +1688,7 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
             c = ( Control )htControls.get( fullName );
             if( null == c &&
                 null == controls &&
-                getPossibleControlNames().contains( fullName ) )
+                possible )
             {
                 c = lowLevelPlayer.doGetNewControl( fullName );
                 if( null != c )
@@ -1508,54 +1718,46 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
             return;
         }
 
-        systemVolume = volume;
-        
-        if (changeSystemVolumeTask == null) {
-            changeSystemVolumeTask = new Runnable() {
-                private boolean isRunning = false;
-                private int waiting = 0;
-                public void run() {
-                    synchronized (this) {
-                        if (isRunning) {
-                            /* the task is already running */
-                            waiting++;
-                            try {
-                                this.wait();
-                            } catch (InterruptedException ie) {
-                                return;
-                            } finally {
-                                waiting--;
-                            }
-                        } else {
-                            isRunning = true;
-                        }
-                    }
-                    for (Enumeration e = mplayers.elements(); e.hasMoreElements();) {
-                        if (waiting > 0) {
-                            /* New task is waiting. Exitting */
-                            break;
-                        }
-                        HighLevelPlayer p = (HighLevelPlayer) e.nextElement();
-                        /* Send event to player if this player is in realized state (or above) */
-                        int state = p.getState();
-                        if (state >= Player.REALIZED) {
-                            VolumeControl vc = (VolumeControl)p.getControl("VolumeControl");
-                            if (vc != null && vc instanceof DirectVolume) {
-                                ((DirectVolume)vc).setSystemVolume(systemVolume);
-                            }
+        // Changes arriving while the worker is busy overwrite each other,
+        // only the latest level gets applied
+        synchronized (systemVolumeLock) {
+            systemVolume = volume;
+            systemVolumePending = true;
+            if (systemVolumeWorker == null) {
+                systemVolumeWorker = new Thread(new SystemVolumeWorker());
+                systemVolumeWorker.start();
+            } else {
+                systemVolumeLock.notify();
+            }
+        }
+    }
+
+    /**
+     * Applies the latest System Volume to all the players from this VM.
+     * Lives until no change has come in for <code>SYSTEM_VOLUME_IDLE</code>.
+     */
+    private static class SystemVolumeWorker implements Runnable {
+        public void run() {
+            while (true) {
+                int volume;
+                synchronized (systemVolumeLock) {
+                    if (!systemVolumePending) {
+                        try {
+                            systemVolumeLock.wait(SYSTEM_VOLUME_IDLE);
+                        } catch (InterruptedException ie) {
+                            // check below
                         }
-                    }
-                    synchronized (this) {
-                        if (waiting > 0) {
-                            this.notify();
-                        } else {
-                            isRunning = false;
+                        if (!systemVolumePending) {
+                            systemVolumeWorker = null;
+                            return;
                         }
                     }
+                    systemVolumePending = false;
+                    volume = systemVolume;
                 }
-            };
+                DirectVolume.applySystemVolume(volume);
+            }
         }
-        new Thread(changeSystemVolumeTask).start();
     }
 
     /**
@@ -1567,34 +1769,71 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      *  Resources are being released during deallocation.
      */
     public static void pauseAll() {
-        vmPaused = true;
-    
-        if (mplayers == null) {
-            return;
-        }
+        synchronized (batchLock) {
+            int n;
+            synchronized (suspendLock) {
+                vmPaused = true;
+                if (mplayers == null) {
+                    return;
+                }
+                n = snapshotPlayers();
+            }
 
-        for (Enumeration e = mplayers.elements(); e.hasMoreElements();) {
-            HighLevelPlayer p = (HighLevelPlayer) e.nextElement();
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                HighLevelPlayer p = batchPlayers[i];
+                synchronized (p) {
+                    p.suspended = false;
+                    if (p.getState() != Player.STARTED) {
+                        continue;
+                    }
+                    // save the player's state and media time
+                    p.suspended = true;
+                    p.suspendTime = p.getMediaTime();
 
-            int state = p.getState();
-            long time = p.getMediaTime();
-            
-            // save the player's state
-            pstates.put(p, new Integer(state));
-            // save the player's media time
-            mtimes.put(p, new Long(time));
+                    int h = p.lowLevelPlayer.getSuspendHandle();
+                    if (h == 0) {
+                        try {
+                            // Stop the player
+                            p.stop();
+                        } catch(MediaException ex) {
+                        }
+                    } else {
+                        p.lowLevelPlayer.doPreStop();
+                        batchHandles[count] = h;
+                        batchPlayers[count++] = p;
+                    }
+                }
+            }
 
-            try {
-                // Stop the player
-                if (state == Player.STARTED) {
-                    p.stop();
+            if (count > 0) {
+                DirectPlayer.nPauseAll(batchHandles, count);
+            }
+
+            for (int i = 0; i < count; i++) {
+                HighLevelPlayer p = batchPlayers[i];
+                synchronized (p) {
+                    if (p.getState() != Player.STARTED) {
+                        continue;
+                    }
+                    if (batchHandles[i] == 0) {
+                        // not paused by the batch, try on its own
+                        try {
+                            p.lowLevelPlayer.doStop();
+                        } catch(MediaException ex) {
+                            p.suspended = false;
+                            continue;
+                        }
+                    } else {
+                        p.lowLevelPlayer.doSuspended();
+                    }
+                    p.stopped(p.suspendTime);
                 }
-            } catch(MediaException ex) {
             }
+            releaseBatch(n);
         }
     }
 
-
     /**
      *  Resumes all media players' activities.
      *
@@ -1603,45 +1842,101 @@ public final class HighLevelPlayer implements Player, TimeBase, StopTimeControl
      *  they were stopped and deallocated.
      */
     public static void resumeAll() {
-        vmPaused = false;
-        
-        if (mplayers == null || pstates.size() == 0) {
-            return;
-        }
-        
-        for (Enumeration e = mplayers.elements(); e.hasMoreElements();) {
-            HighLevelPlayer p = (HighLevelPlayer) e.nextElement();
+        synchronized (batchLock) {
+            int n;
+            synchronized (suspendLock) {
+                vmPaused = false;
+                if (mplayers == null) {
+                    return;
+                }
+                n = snapshotPlayers();
+            }
 
-            int state = ((Integer) pstates.get(p)).intValue();
-            long time = ((Long) mtimes.get(p)).longValue();
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                HighLevelPlayer p = batchPlayers[i];
+                synchronized (p) {
+                    if (!p.suspended) {
+                        continue;
+                    }
+                    p.suspended = false;
+                    // closed or restarted meanwhile
+                    if (p.getState() != Player.PREFETCHED) {
+                        continue;
+                    }
 
-            switch (state) {
-                /*
-                case Player.PREFETCHED:
-                    try {
-                        p.prefetch();
-                        p.setMediaTime(time);
-                    } catch (MediaException ex) {
+                    int h = p.lowLevelPlayer.getSuspendHandle();
+                    if (h == 0 || p.getMediaTime() != p.suspendTime) {
+                        try {
+                            p.setMediaTime(p.suspendTime);
+                            p.start();
+                        } catch (MediaException ex) {
+                        }
+                    } else {
+                        p.updateTimeBase(true);
+                        batchHandles[count] = h;
+                        batchPlayers[count++] = p;
                     }
-                    break;
-                */
-                case Player.STARTED:
-                    try {
-                        //p.realize();
-                        //p.prefetch();
-                        if (p.getState() != Player.STARTED) {
-                            p.setMediaTime(time);
+                }
+            }
+
+            if (count > 0) {
+                DirectPlayer.nResumeAll(batchHandles, count);
+            }
+
+            for (int i = 0; i < count; i++) {
+                HighLevelPlayer p = batchPlayers[i];
+                synchronized (p) {
+                    if (p.getState() != Player.PREFETCHED) {
+                        continue;
+                    }
+                    if (batchHandles[i] == 0) {
+                        // not resumed by the batch, try on its own
+                        try {
                             p.start();
+                        } catch (MediaException ex) {
                         }
-                    } catch (MediaException ex) {
+                        continue;
                     }
-                    break;
+                    p.lowLevelPlayer.doResumed();
+                    p.started();
+                }
             }
+            releaseBatch(n);
         }
+    }
 
-        // clear player states and media times
-        pstates.clear();
-        mtimes.clear();
+    /**
+     * Copies the players from this VM to <code>batchPlayers</code>,
+     * growing the batch arrays only when there are more players than
+     * ever before. Called holding batchLock and suspendLock; the players
+     * are locked by the caller only after releasing suspendLock.
+     *
+     * @return the number of players
+     */
+    private static int snapshotPlayers() {
+        synchronized (mplayers) {
+            int n = mplayers.size();
+            if (batchPlayers.length < n) {
+                batchPlayers = new HighLevelPlayer[n];
+                batchHandles = new int[n];
+            }
+            n = 0;
+            for (Enumeration e = mplayers.elements(); e.hasMoreElements();) {
+                batchPlayers[n++] = (HighLevelPlayer) e.nextElement();
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Drops the references to the players of the last batch, so the
+     * arrays don't keep closed players from being collected.
+     */
+    private static void releaseBatch(int n) {
+        for (int i = 0; i < n; i++) {
+            batchPlayers[i] = null;
+        }
     }
 
     /**
@@ -26,6 +26,7 @@ package com.sun.mmedia;
 
 import javax.microedition.media.Control;
 import javax.microedition.media.MediaException;
+import javax.microedition.media.TimeBase;
 
 abstract class LowLevelPlayer {
     
@@ -151,4 +152,43 @@ abstract class LowLevelPlayer {
 
     protected abstract String doGetContentType();
 
+    /**
+     * Returns the native handle to pause and resume this player together
+     * with others when the VM is paused or resumed, or 0 if the player
+     * has to be stopped and started on its own.
+     */
+    int getSuspendHandle() {
+        return 0;
+    }
+
+    /**
+     * Called instead of <code>doStop</code> after the player has been
+     * paused by a batch.
+     */
+    void doSuspended() {
+    }
+
+    /**
+     * Called instead of <code>doStart</code> after the player has been
+     * resumed by a batch.
+     */
+    void doResumed() {
+    }
+
+    /**
+     * Called after <code>Player.setTimeBase()</code> has changed the
+     * master clock, for players which run their own media clock.
+     *
+     * @param  master  the new master, or null for the player's own clock
+     */
+    void setTimeBase(TimeBase master) {
+    }
+
+    /**
+     * Called when the native player reports that its metadata may have
+     * changed.
+     */
+    void doMetaDataChanged() {
+    }
+
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Supplies the sinks of a segmented recording, see
+ * <code>DirectRecord.setSegmentation()</code>.
+ */
+public interface RecordSegmentProvider {
+
+    /**
+     * Opens the sink for the next segment. The recorder closes the
+     * stream once the segment is complete and then posts
+     * <code>DirectRecord.SEGMENT_COMPLETED</code> with the segment index.
+     * <p>
+     * Segment 0 is opened by <code>setSegmentation()</code>, later ones
+     * on a worker thread of the recorder which holds no locks.
+     *
+     * @param index the segment number, starting from 0
+     * @return the stream the segment is written to
+     */
+    OutputStream openSegment(int index) throws IOException;
+}
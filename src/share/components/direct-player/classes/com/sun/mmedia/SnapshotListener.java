@@ -0,0 +1,54 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+/**
+ * Receives the result of an asynchronous video snapshot.
+ * <p>
+ * The methods are called on the thread which also times out the
+ * snapshots of the player, never on the thread which requested the
+ * snapshot nor on the native event thread. They should return
+ * quickly. Only when a request is cancelled are its listeners called
+ * by the cancelling thread.
+ */
+public interface SnapshotListener {
+
+    /**
+     * Called when the snapshot has been taken.
+     *
+     * @param request   the completed request
+     * @param imageData the encoded image, shared by all listeners
+     *                  of a coalesced request
+     */
+    void snapshotTaken(SnapshotRequest request, byte[] imageData);
+
+    /**
+     * Called when the snapshot could not be taken, e.g. because it
+     * timed out, was cancelled or the player was closed.
+     *
+     * @param request the failed request
+     * @param reason  a description of the failure
+     */
+    void snapshotFailed(SnapshotRequest request, String reason);
+}
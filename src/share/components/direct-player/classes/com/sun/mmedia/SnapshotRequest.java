@@ -0,0 +1,220 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.util.Vector;
+import javax.microedition.media.MediaException;
+
+/**
+ * Handle of a video snapshot queued by
+ * <code>DirectVideo.getSnapshot(String, SnapshotListener)</code>.
+ * <p>
+ * The result can either be waited for with <code>getData()</code> or
+ * received through the <code>SnapshotListener</code>s of the request.
+ * Requests for the same image type which are still waiting in the
+ * queue are coalesced, so one request may have several listeners
+ * and may be shared by several callers.
+ */
+public final class SnapshotRequest {
+
+    /** The request waits in the queue */
+    public static final int PENDING = 0;
+    /** The native layer is taking the snapshot */
+    public static final int IN_PROGRESS = 1;
+    /** The snapshot has been taken */
+    public static final int COMPLETED = 2;
+    /** The snapshot failed, timed out or was cancelled */
+    public static final int FAILED = 3;
+
+    private final String imageType;
+    private final Vector listeners = new Vector(1);
+
+    private int state = PENDING;
+    private byte[] data;
+    private String error;
+
+    SnapshotRequest(String imageType) {
+        this.imageType = imageType;
+    }
+
+    /**
+     * Returns the requested image type.
+     */
+    public String getImageType() {
+        return imageType;
+    }
+
+    /**
+     * Returns <code>PENDING</code>, <code>IN_PROGRESS</code>,
+     * <code>COMPLETED</code> or <code>FAILED</code>.
+     */
+    public synchronized int getState() {
+        return state;
+    }
+
+    /**
+     * Returns true if the request has completed or failed.
+     */
+    public synchronized boolean isDone() {
+        return state >= COMPLETED;
+    }
+
+    /**
+     * Cancels the request if it hasn't been started yet. Its listeners
+     * get <code>snapshotFailed()</code> before this returns.
+     *
+     * @return true if the request was cancelled
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = FAILED;
+            error = "Snapshot was cancelled";
+            notifyAll();
+        }
+        deliver();
+        return true;
+    }
+
+    /**
+     * Waits for the snapshot. The player fails a request the native
+     * layer doesn't answer in time, counting from when the request
+     * was handed to it, so there is no need to pass a timeout just
+     * to avoid waiting forever.
+     *
+     * @param timeout the maximum time to wait in milliseconds,
+     *                0 to wait until the request is done
+     * @return the encoded image
+     * @throws MediaException if the snapshot failed or didn't complete
+     *         in time
+     */
+    public synchronized byte[] getData(long timeout) throws MediaException {
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (state < COMPLETED) {
+                long wait = 0;
+                if (timeout > 0) {
+                    wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new MediaException(
+                            "Timed out while making a Camera Snapshot");
+                    }
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException ie) {
+            throw new MediaException(
+                "Camera Snapshot was interrupted by user: " + ie.toString());
+        }
+        if (state == FAILED) {
+            throw new MediaException(error);
+        }
+        return data;
+    }
+
+    /**
+     * Adds a listener if the request hasn't been started yet.
+     *
+     * @return false if it's too late to join this request
+     */
+    synchronized boolean addListener(SnapshotListener l) {
+        if (state != PENDING) {
+            return false;
+        }
+        if (l != null && !listeners.contains(l)) {
+            listeners.addElement(l);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the request as being handled by the native layer.
+     *
+     * @return false if the request was cancelled meanwhile
+     */
+    synchronized boolean start() {
+        if (state != PENDING) {
+            return false;
+        }
+        state = IN_PROGRESS;
+        return true;
+    }
+
+    /**
+     * Completes the request and wakes up the callers waiting in
+     * <code>getData()</code>. The listeners are notified by
+     * <code>deliver()</code>.
+     *
+     * @param imageData the image, or null if the snapshot failed
+     * @param reason    the failure description if imageData is null
+     * @return false if the request had already finished
+     */
+    synchronized boolean finish(byte[] imageData, String reason) {
+        if (state >= COMPLETED) {
+            return false;
+        }
+        if (imageData != null) {
+            state = COMPLETED;
+            data = imageData;
+        } else {
+            state = FAILED;
+            error = reason;
+        }
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Returns true if there are listeners to deliver the result to.
+     */
+    synchronized boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Notifies the listeners of a finished request on the calling
+     * thread.
+     */
+    void deliver() {
+        SnapshotListener[] ls;
+        synchronized (this) {
+            ls = new SnapshotListener[listeners.size()];
+            listeners.copyInto(ls);
+            listeners.removeAllElements();
+        }
+        for (int i = 0; i < ls.length; i++) {
+            try {
+                if (state == COMPLETED) {
+                    ls[i].snapshotTaken(this, data);
+                } else {
+                    ls[i].snapshotFailed(this, error);
+                }
+            } catch (RuntimeException e) {
+                // one broken listener must not starve the others
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import javax.microedition.media.MediaException;
+import javax.microedition.media.Player;
+import javax.microedition.media.TimeBase;
+import javax.microedition.media.control.RateControl;
+
+/**
+ * Keeps the media time of a <code>HighLevelPlayer</code> locked to a
+ * master <code>TimeBase</code>.
+ * <p>
+ * When the player starts, its media time and the master time are taken
+ * as the anchor. From then on the player is expected to advance by the
+ * master time scaled by the rate it was started with. The difference is
+ * checked periodically: small drift is corrected by trimming the playback
+ * rate through the player's <code>RateControl</code>, large drift by
+ * seeking to the expected media time. Players without a
+ * <code>RateControl</code> can only seek, which they do as soon as the
+ * drift gets noticeable rather than waiting for it to grow large.
+ * <p>
+ * When the master is another player, the clock is driven by that
+ * player's media time, i.e. its audio output position.
+ */
+final class TimeBaseSlave {
+
+    /** Correction period in milliseconds */
+    private static final long PERIOD = 250;
+    /** Drift below this is left alone, in microseconds */
+    private static final long TOLERANCE = 5000;
+    /** Drift above this is corrected by seeking, in microseconds */
+    private static final long RESYNC_THRESHOLD = 100000;
+    /**
+     * Drift above this is corrected by seeking on players without a
+     * <code>RateControl</code>, in microseconds. Higher than TOLERANCE
+     * since every seek is audible.
+     */
+    private static final long SEEK_THRESHOLD = 40000;
+    /** Drift is corrected by rate trimming over this time, in microseconds */
+    private static final long TRIM_HORIZON = 4 * PERIOD * 1000;
+    /** Largest rate trim in "milli-percentage" */
+    private static final int MAX_TRIM = 2000;
+    /** Normal playback rate in "milli-percentage" */
+    private static final int NORMAL_RATE = 100000;
+
+    /** Shared by all slaved players */
+    private static Timer timer;
+
+    private final HighLevelPlayer player;
+    private final TimeBase master;
+
+    private boolean running;
+    private boolean anchored;
+    private long anchorTime;
+    private long anchorMediaTime;
+    private RateControl rateControl;
+    private int baseRate = NORMAL_RATE;
+    private int trim;
+    private long drift;
+    private int resyncs;
+    /** Counts the starts, so a correction can tell it's stale */
+    private int session;
+    private TimerTask correction;
+
+    TimeBaseSlave(HighLevelPlayer player, TimeBase master) {
+        this.player = player;
+        this.master = master;
+    }
+
+    TimeBase getMaster() {
+        return master;
+    }
+
+    /**
+     * Anchors the next start at the given master time instead of the
+     * master time at which the player actually gets started. Used to
+     * start a group of players on the same tick.
+     */
+    void anchorAt(long masterTime) {
+        long mediaTime = player.getMediaTime();
+        synchronized (this) {
+            anchorTime = masterTime;
+            anchorMediaTime = mediaTime;
+            anchored = true;
+        }
+    }
+
+    /**
+     * Called after the player has started.
+     */
+    void start() {
+        // the player and the master are queried before taking the lock,
+        // which is never held while calling into them
+        long masterTime = master.getTime();
+        long mediaTime = player.getMediaTime();
+        RateControl rc = (RateControl)player.getControl(HighLevelPlayer.racName);
+        int rate = (rc == null) ? NORMAL_RATE : rc.getRate();
+        synchronized (this) {
+            if (running) {
+                return;
+            }
+            if (!anchored) {
+                anchorTime = masterTime;
+                anchorMediaTime = mediaTime;
+            }
+            anchored = false;
+            rateControl = rc;
+            baseRate = rate;
+            trim = 0;
+            drift = 0;
+            running = true;
+            session++;
+            correction = new Correction();
+            getTimer().schedule(correction, PERIOD, PERIOD);
+        }
+    }
+
+    /**
+     * Called when the player stops, reaches the end of media or is closed.
+     */
+    void stop() {
+        RateControl rc;
+        int rate;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            correction.cancel();
+            correction = null;
+            rc = (trim != 0) ? rateControl : null;
+            rate = baseRate;
+            trim = 0;
+            rateControl = null;
+        }
+        if (rc != null) {
+            rc.setRate(rate);
+        }
+    }
+
+    /**
+     * Returns the drift measured last, positive if the player is ahead
+     * of the master, in microseconds.
+     */
+    synchronized long getDrift() {
+        return drift;
+    }
+
+    /**
+     * Returns how often the player had to seek to catch up.
+     */
+    synchronized int getResyncCount() {
+        return resyncs;
+    }
+
+    private void correct() {
+        // Query and correct the player outside of the lock: the player
+        // calls start() and stop() with its own monitor held
+        long now = player.getMediaTime();
+        if (now == Player.TIME_UNKNOWN) {
+            return;
+        }
+        long masterTime = master.getTime();
+
+        long expected;
+        RateControl rc = null;
+        int rate = 0;
+        int base;
+        int s;
+        boolean seek = false;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            s = session;
+            base = baseRate;
+            expected = anchorMediaTime +
+                (masterTime - anchorTime) * baseRate / NORMAL_RATE;
+            if (expected < 0) {
+                return;
+            }
+            drift = now - expected;
+            long abs = drift < 0 ? -drift : drift;
+
+            if (abs <= RESYNC_THRESHOLD && rateControl != null) {
+                int t = 0;
+                if (abs > TOLERANCE) {
+                    t = (int)(-drift * baseRate / TRIM_HORIZON);
+                    if (t > MAX_TRIM) {
+                        t = MAX_TRIM;
+                    } else if (t < -MAX_TRIM) {
+                        t = -MAX_TRIM;
+                    }
+                }
+                if (t == trim) {
+                    return;
+                }
+                trim = t;
+                rc = rateControl;
+                rate = baseRate + trim;
+            } else if (abs <= SEEK_THRESHOLD) {
+                return;
+            } else {
+                if (trim != 0) {
+                    rc = rateControl;
+                    rate = baseRate;
+                    trim = 0;
+                }
+                resyncs++;
+                seek = true;
+            }
+        }
+
+        if (rc != null) {
+            rc.setRate(rate);
+            boolean stale;
+            synchronized (this) {
+                stale = !running || session != s;
+            }
+            if (stale) {
+                // stopped meanwhile, undo the trim stop() has missed
+                rc.setRate(base);
+                return;
+            }
+        }
+        if (!seek) {
+            return;
+        }
+        try {
+            player.setMediaTime(expected);
+        } catch (MediaException e) {
+            // try again next period
+        } catch (IllegalStateException e) {
+            // closed meanwhile
+        }
+    }
+
+    private static synchronized Timer getTimer() {
+        if (timer == null) {
+            timer = new Timer();
+        }
+        return timer;
+    }
+
+    private class Correction extends TimerTask {
+        public void run() {
+            correct();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+/**
+ * A frame grabbed from a camera player. Frames are pooled by their
+ * <code>FrameGrabber</code> and have to be given back with
+ * <code>release()</code>; the pixel arrays must not be used afterwards.
+ */
+public final class VideoFrame {
+
+    /** xRGB pixels, one int per pixel, in <code>getPixels()</code> */
+    public static final int ARGB = 0;
+    /**
+     * Planar YUV 4:2:0 (I420) in <code>getYUV()</code>: the Y plane
+     * followed by the U and V planes of half width and height
+     */
+    public static final int YUV420 = 1;
+
+    private final FrameGrabber owner;
+    private int format;
+    private int width;
+    private int height;
+    private long timeStamp;
+    private int sequence;
+    private int[] pixels;
+    private byte[] yuv;
+    private boolean inUse;
+
+    VideoFrame(FrameGrabber owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Returns <code>ARGB</code> or <code>YUV420</code>.
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the system time in milliseconds at which the frame
+     * was grabbed.
+     */
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * Returns the index of the frame since grabbing started. Gaps
+     * show dropped frames.
+     */
+    public int getSequenceNumber() {
+        return sequence;
+    }
+
+    /**
+     * Returns the xRGB pixels of an <code>ARGB</code> frame. The array
+     * may be longer than <code>width * height</code>.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the samples of a <code>YUV420</code> frame. The array
+     * may be longer than the frame data.
+     */
+    public byte[] getYUV() {
+        return yuv;
+    }
+
+    /**
+     * Gives the frame back to the pool of its grabber.
+     */
+    public void release() {
+        owner.recycle(this);
+    }
+
+    /**
+     * Prepares the buffers for a frame of the given size, reusing
+     * them if they are large enough.
+     */
+    void setup(int format, int width, int height, int sequence, long timeStamp) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.sequence = sequence;
+        this.timeStamp = timeStamp;
+        if (format == YUV420) {
+            int size = width * height +
+                       2 * ((width + 1) >> 1) * ((height + 1) >> 1);
+            if (yuv == null || yuv.length < size) {
+                yuv = new byte[size];
+            }
+        } else if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+    }
+
+    /* pool bookkeeping, guarded by the owner */
+    boolean isInUse() {
+        return inUse;
+    }
+
+    void setInUse(boolean inUse) {
+        this.inUse = inUse;
+    }
+}
@@ -35,6 +35,20 @@ interface VideoSource
     // Get snapshot
     byte[] getVideoSnapshot(String imageType) throws MediaException;
     
+    // Queue a snapshot without waiting for it
+    SnapshotRequest requestVideoSnapshot(String imageType,
+            SnapshotListener listener) throws MediaException;
+    
+    // Check the snapshot permission once for a series of snapshots
+    void checkSnapshotPermission();
+    
+    // Queue a snapshot, the permission having been checked already
+    SnapshotRequest queueVideoSnapshot(String imageType,
+            SnapshotListener listener) throws MediaException;
+    
+    // Is the video coming from a camera
+    boolean isCameraSource();
+    
     // Set fullscreen
     boolean setVideoFullScreen( boolean fullscreen);
     
@@ -103,6 +103,35 @@ KNIDECL(com_sun_mmedia_DirectMIDIControl_nShortMidiEvent) {
     KNI_ReturnVoid();
 }
 
+/*  private native void nShortMidiEvents ( int handle , int [ ] events , int offset , int count ) ; */
+KNIEXPORT KNI_RETURNTYPE_VOID
+KNIDECL(com_sun_mmedia_DirectMIDIControl_nShortMidiEvents) {
+
+    jint handle = KNI_GetParameterAsInt(1);
+    jint offset = KNI_GetParameterAsInt(3);
+    jint count = KNI_GetParameterAsInt(4);
+    KNIPlayerInfo* pKniInfo = (KNIPlayerInfo*)handle;
+    jint i, msg;
+
+    KNI_StartHandles(1);
+    KNI_DeclareHandle(eventsHandle);
+    KNI_GetParameterAsObject(2, eventsHandle);
+
+    if (pKniInfo && pKniInfo->pNativeHandle) {
+        /* events are (time, message) pairs, time is handled by Java */
+        for (i = offset; i < offset + count; i++) {
+            msg = KNI_GetIntArrayElement(eventsHandle, i * 2 + 1);
+            javacall_media_short_midi_event(pKniInfo->pNativeHandle,
+                                            (long)((msg >> 16) & 0xFF),
+                                            (long)((msg >> 8) & 0xFF),
+                                            (long)(msg & 0xFF));
+        }
+    }
+
+    KNI_EndHandles();
+    KNI_ReturnVoid();
+}
+
 /*  private native int nLongMidiEvent ( int handle , byte [ ] data , int offset , int length ) ; */
 KNIEXPORT KNI_RETURNTYPE_INT
 KNIDECL(com_sun_mmedia_DirectMIDIControl_nLongMidiEvent) {
@@ -530,6 +559,56 @@ KNIDECL(com_sun_mmedia_DirectMIDIControl_nGetProgramList) {
     KNI_ReturnInt(returnValue);
 }
 
+/*  private native int nGetProgramNames(int handle, int bank, int[] progs, int count,
+                                         byte[] names, int[] lengths);  */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_mmedia_DirectMIDIControl_nGetProgramNames) {
+
+    KNIPlayerInfo* pKniInfo = (KNIPlayerInfo*)KNI_GetParameterAsInt(1);
+    jint returnValue = -1;
+
+    if (pKniInfo && pKniInfo->pNativeHandle) {
+
+        long bank, prog, len, size;
+        jint count, i;
+        char *pname;
+        KNI_StartHandles(3);
+        KNI_DeclareHandle(progsHandle);
+        KNI_DeclareHandle(namesHandle);
+        KNI_DeclareHandle(lengthsHandle);
+
+        bank = (long)KNI_GetParameterAsInt(2);
+        KNI_GetParameterAsObject(3, progsHandle);
+        count = KNI_GetParameterAsInt(4);
+        KNI_GetParameterAsObject(5, namesHandle);
+        KNI_GetParameterAsObject(6, lengthsHandle);
+
+        /* one name slot per program */
+        size = (count > 0) ? (long)KNI_GetArrayLength(namesHandle) / count : 0;
+        pname = (char*)MMP_MALLOC((size+1) * sizeof(jbyte));
+
+        if (pname) {
+            returnValue = 0;
+            for (i = 0; i < count; i++) {
+                prog = (long)KNI_GetIntArrayElement(progsHandle, i);
+                len = size;
+                if (JAVACALL_SUCCEEDED(javacall_media_get_midibank_program_name(pKniInfo->pNativeHandle, bank, prog, pname, &len))) {
+                    KNI_SetRawArrayRegion(namesHandle, (jsize)(i * size), (jsize)len, ( jbyte* )pname);
+                    KNI_SetIntArrayElement(lengthsHandle, i, (jint)len);
+                    returnValue++;
+                } else {
+                    KNI_SetIntArrayElement(lengthsHandle, i, -1);
+                }
+            }
+            MMP_FREE(pname);
+        }
+
+        KNI_EndHandles();
+    }
+
+    KNI_ReturnInt(returnValue);
+}
+
 /* private native int nGetProgram(int handle, int[] program);  */
 KNIEXPORT KNI_RETURNTYPE_INT
 KNIDECL(com_sun_mmedia_DirectMIDIControl_nGetProgram) {
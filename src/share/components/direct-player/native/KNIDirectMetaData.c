@@ -56,117 +56,117 @@ KNIDECL(com_sun_mmedia_DirectMetaData_nGetKeyCount) {
     KNI_ReturnInt((int)keys);
 }
 
-/* private native String nGetKey(int hNative, int index); */
-KNIEXPORT KNI_RETURNTYPE_OBJECT
-KNIDECL(com_sun_mmedia_DirectMetaData_nGetKey) {
-    jint handle = KNI_GetParameterAsInt(1);
-    jint index = KNI_GetParameterAsInt(2);
-    javacall_result ret = JAVACALL_FAIL;
-    javacall_utf16* key = NULL;
+/**
+ * Fetches the key at the given index. Returns a buffer to be freed with
+ * MMP_FREE, or NULL if there is no such key or memory ran out.
+ */
+static javacall_utf16* get_metadata_key(javacall_handle handle, int index,
+                                        javacall_int32* length) {
+    javacall_result ret;
     javacall_int32 keySize = MIN_KEY_LENGTH;
-    KNIPlayerInfo* pKniInfo = (KNIPlayerInfo*)handle;
+    javacall_utf16* key = MMP_MALLOC(sizeof(javacall_utf16) * keySize);
 
-    KNI_StartHandles(1);
-    KNI_DeclareHandle(stringObj);
-    KNI_ReleaseHandle(stringObj);
+    if (key == NULL) {
+        return NULL;
+    }
+    ret = javacall_media_get_metadata_key(handle, index, keySize, key);
+    while (ret == JAVACALL_OUT_OF_MEMORY && keySize < MAX_KEY_LENGTH) {
+        javacall_utf16* bigger;
+        keySize <<= 1;
+        bigger = MMP_REALLOC(key, sizeof(javacall_utf16) * keySize);
+        if (bigger == NULL) {
+            break;
+        }
+        key = bigger;
+        ret = javacall_media_get_metadata_key(handle, index, keySize, key);
+    }
+    if (ret != JAVACALL_OK) {
+        MMP_FREE(key);
+        return NULL;
+    }
+    javautil_unicode_utf16_ulength(key, length);
+    return key;
+}
 
-    MMP_DEBUG_STR("[kni_metadata] +nGetKey\n");
+/**
+ * Fetches the value of the given zero terminated key. Returns a buffer
+ * to be freed with MMP_FREE, or NULL if the key has no value or memory
+ * ran out.
+ */
+static javacall_utf16* get_metadata_value(javacall_handle handle,
+                                          javacall_utf16* key,
+                                          javacall_int32* length) {
+    javacall_result ret;
+    javacall_int32 valueSize = MIN_VALUE_LENGTH;
+    javacall_utf16* value = MMP_MALLOC(sizeof(javacall_utf16) * valueSize);
 
-    if (pKniInfo && pKniInfo->pNativeHandle) {
-        key = MMP_MALLOC(sizeof(javacall_utf16) * keySize);
-        if (key != NULL) {
-            ret = javacall_media_get_metadata_key(pKniInfo->pNativeHandle, index, keySize, key);
-            while (ret == JAVACALL_OUT_OF_MEMORY && keySize < MAX_KEY_LENGTH) {
-                keySize <<= 1;
-                key = MMP_REALLOC(key, sizeof(javacall_utf16) * keySize);
-                if (key == NULL)
-                    break;
-                ret = javacall_media_get_metadata_key(pKniInfo->pNativeHandle, index, keySize, key);
-            }
-            if (key != NULL) {
-                if (ret == JAVACALL_OK) {
-                    javautil_unicode_utf16_ulength(key, &keySize);
-                    KNI_NewString(key, keySize, stringObj);
-                }
-                MMP_FREE(key);
-            }
+    if (value == NULL) {
+        return NULL;
+    }
+    ret = javacall_media_get_metadata(handle, key, valueSize, value);
+    while (ret == JAVACALL_OUT_OF_MEMORY && valueSize < MAX_VALUE_LENGTH) {
+        javacall_utf16* bigger;
+        valueSize <<= 1;
+        bigger = MMP_REALLOC(value, sizeof(javacall_utf16) * valueSize);
+        if (bigger == NULL) {
+            break;
         }
-    } else {
-        MMP_DEBUG_STR("[nGetKey] Invalid native handle");
+        value = bigger;
+        ret = javacall_media_get_metadata(handle, key, valueSize, value);
     }
-
-    KNI_EndHandlesAndReturnObject(stringObj);
+    /* 0xffff alone marks a key without a value */
+    if (ret != JAVACALL_OK ||
+            (value[0] == (javacall_utf16)0xffff && value[1] == 0)) {
+        MMP_FREE(value);
+        return NULL;
+    }
+    javautil_unicode_utf16_ulength(value, length);
+    return value;
 }
 
-/* private native String nGetKeyValue(int hNative, String key); */
-KNIEXPORT KNI_RETURNTYPE_OBJECT
-KNIDECL(com_sun_mmedia_DirectMetaData_nGetKeyValue) {
+/* private native int nGetKeyValues(int hNative, String[] pairs); */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_mmedia_DirectMetaData_nGetKeyValues) {
     jint handle = KNI_GetParameterAsInt(1);
-    javacall_result ret = JAVACALL_FAIL;
-    javacall_utf16* key = NULL;
-    int keyLength = 0;
-    javacall_utf16* value = NULL;
-    javacall_int32 valueSize = MIN_VALUE_LENGTH;
     KNIPlayerInfo* pKniInfo = (KNIPlayerInfo*)handle;
+    javacall_utf16* key;
+    javacall_utf16* value;
+    javacall_int32 length;
+    int count = -1;
+    int max;
+    int i;
 
     KNI_StartHandles(2);
-    KNI_DeclareHandle(keyObj);
-    KNI_DeclareHandle(valueObj);
-
-    KNI_GetParameterAsObject(2, keyObj);
-    KNI_ReleaseHandle(valueObj);
-
-    MMP_DEBUG_STR("[kni_metadata] +nGetKeyValue\n");
-
-    if (0 < (keyLength = KNI_GetStringLength(keyObj))) {
-        key = MMP_MALLOC((keyLength + 1) * sizeof(jchar));
-        if (key) {
-            KNI_GetStringRegion(keyObj, 0, keyLength, key);
-            key[keyLength] = 0;
-        } else {
-            KNI_ThrowNew(jsropOutOfMemoryError, NULL);
-            keyLength = 0;
-        }
-    }
+    KNI_DeclareHandle(pairsObj);
+    KNI_DeclareHandle(stringObj);
+
+    KNI_GetParameterAsObject(2, pairsObj);
 
-    if (keyLength > 0) {
-        if (pKniInfo && pKniInfo->pNativeHandle) {
-            value = MMP_MALLOC(sizeof(javacall_utf16) * valueSize);
-            if (value == NULL) {
-                KNI_ThrowNew(jsropOutOfMemoryError, NULL);
-                MMP_FREE(key);
-            } else {
-                ret = javacall_media_get_metadata(pKniInfo->pNativeHandle, key, valueSize, value);
-                while (ret == JAVACALL_OUT_OF_MEMORY && valueSize < MAX_VALUE_LENGTH) {
-                    valueSize <<= 1;
-                    value = MMP_REALLOC(value, sizeof(javacall_utf16) * valueSize);
-                    if (value == NULL) {
-                        KNI_ThrowNew(jsropOutOfMemoryError, NULL);
-                        MMP_FREE(key);
-                        break;
-                    }
-                    ret = javacall_media_get_metadata(pKniInfo->pNativeHandle, key, valueSize, value);
-                }
-                if (key != NULL && value != NULL) {
-                    if (ret == JAVACALL_OK) {
-                        if (value[0] != (javacall_utf16)0xffff || value[1] != 0) {
-                            javautil_unicode_utf16_ulength(value, &valueSize);
-                            KNI_NewString(value, valueSize, valueObj);
-                        }
-                    } else {
-                        MMP_DEBUG_STR("[nGetKeyValue] Failed in JavaCall");
-                    }
-                    MMP_FREE(value);
-                    MMP_FREE(key);
-                }
+    MMP_DEBUG_STR("[kni_metadata] +nGetKeyValues\n");
+
+    if (pKniInfo && pKniInfo->pNativeHandle && !KNI_IsNullHandle(pairsObj)) {
+        max = KNI_GetArrayLength(pairsObj) / 2;
+        for (i = 0; i < max; i++) {
+            key = get_metadata_key(pKniInfo->pNativeHandle, i, &length);
+            if (key == NULL) {
+                break;
+            }
+            KNI_NewString(key, length, stringObj);
+            KNI_SetObjectArrayElement(pairsObj, 2 * i, stringObj);
+
+            value = get_metadata_value(pKniInfo->pNativeHandle, key, &length);
+            if (value != NULL) {
+                KNI_NewString(value, length, stringObj);
+                KNI_SetObjectArrayElement(pairsObj, 2 * i + 1, stringObj);
+                MMP_FREE(value);
             }
-        } else {
-            MMP_DEBUG_STR("[nGetKeyValue] Invalid native handle");
+            MMP_FREE(key);
         }
+        count = i;
     } else {
-        MMP_DEBUG_STR("[nGetKeyValue] Bad key");
+        MMP_DEBUG_STR("[nGetKeyValues] Invalid native handle");
     }
 
-    KNI_EndHandlesAndReturnObject(valueObj);
+    KNI_EndHandles();
+    KNI_ReturnInt(count);
 }
-
@@ -309,7 +309,7 @@ UnlockAudioMutex();
     KNI_ReturnInt((jint)ms);
 }
 
-/*  protected native int nGetDuration ( int handle ) ; */
+/*  protected static native int nGetDuration ( int handle ) ; */
 KNIEXPORT KNI_RETURNTYPE_INT
 KNIDECL(com_sun_mmedia_DirectPlayer_nGetDuration) {
 
@@ -397,6 +397,66 @@ UnlockAudioMutex();
     KNI_ReturnBoolean(JAVACALL_OK == result? KNI_TRUE: KNI_FALSE);
 }
 
+/**
+ * Pauses or resumes a batch of players. Players which aren't playing are
+ * skipped. The handles of the players which could not be paused or
+ * resumed are set to 0. Completion events of asynchronous requests
+ * aren't waited for.
+ *
+ * @return the number of players paused or resumed
+ */
+static jint jmmpPauseResumeAll(KNIDECLARGS jboolean pause) {
+    jint count = KNI_GetParameterAsInt(2);
+    jint done = 0;
+    jint i;
+    KNIPlayerInfo* pKniInfo;
+    javacall_result result;
+
+    KNI_StartHandles(1);
+    KNI_DeclareHandle(handlesHandle);
+    KNI_GetParameterAsObject(1, handlesHandle);
+
+LockAudioMutex();
+    for (i = 0; i < count; i++) {
+        pKniInfo = (KNIPlayerInfo*)KNI_GetIntArrayElement(handlesHandle, i);
+        result = JAVACALL_FAIL;
+        if (pKniInfo && pKniInfo->pNativeHandle &&
+                JAVACALL_TRUE == jmmpCheckCondition(pKniInfo, CHECK_ISPLAYING)) {
+            result = pause ? javacall_media_pause(pKniInfo->pNativeHandle)
+                           : javacall_media_resume(pKniInfo->pNativeHandle);
+        }
+        if (JAVACALL_OK == result || JAVACALL_WOULD_BLOCK == result) {
+            done++;
+        } else {
+            KNI_SetIntArrayElement(handlesHandle, i, 0);
+        }
+    }
+UnlockAudioMutex();
+
+    KNI_EndHandles();
+    return done;
+}
+
+/*  protected static native int nPauseAll ( int[] handles , int count ) ; */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_mmedia_DirectPlayer_nPauseAll) {
+    jint done;
+
+    MMP_DEBUG_STR("+nPauseAll\n");
+    done = jmmpPauseResumeAll(KNIPASSARGS KNI_TRUE);
+    KNI_ReturnInt(done);
+}
+
+/*  protected static native int nResumeAll ( int[] handles , int count ) ; */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_mmedia_DirectPlayer_nResumeAll) {
+    jint done;
+
+    MMP_DEBUG_STR("+nResumeAll\n");
+    done = jmmpPauseResumeAll(KNIPASSARGS KNI_FALSE);
+    KNI_ReturnInt(done);
+}
+
 /*  protected native boolean nIsNeedBuffering ( int handle ) ; */
 KNIEXPORT KNI_RETURNTYPE_BOOLEAN
 KNIDECL(com_sun_mmedia_DirectPlayer_nIsNeedBuffering) {
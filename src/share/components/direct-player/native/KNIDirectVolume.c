@@ -142,3 +142,41 @@ KNIDECL(com_sun_mmedia_DirectVolume_nGetSystemVolume) {
     KNI_ReturnInt((int)volume);
 }
 
+/*  private static native int nSetVolumes ( int[] handles , int[] levels , int count ) ; */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_mmedia_DirectVolume_nSetVolumes) {
+
+    jint count = KNI_GetParameterAsInt(3);
+    jint done = 0;
+    jint i;
+    long level;
+    javacall_result ret;
+    KNIPlayerInfo* pKniInfo;
+
+    KNI_StartHandles(2);
+    KNI_DeclareHandle(handlesHandle);
+    KNI_DeclareHandle(levelsHandle);
+    KNI_GetParameterAsObject(1, handlesHandle);
+    KNI_GetParameterAsObject(2, levelsHandle);
+
+    MMP_DEBUG_STR1("[kni_volume] +nSetVolumes %d\n", count);
+
+    for (i = 0; i < count; i++) {
+        pKniInfo = (KNIPlayerInfo*)KNI_GetIntArrayElement(handlesHandle, i);
+        level = KNI_GetIntArrayElement(levelsHandle, i);
+        ret = JAVACALL_FAIL;
+        if (pKniInfo && pKniInfo->pNativeHandle) {
+            /* Don't block on each player: a pending set completes
+               asynchronously and nobody waits for its event */
+            ret = javacall_media_set_volume(pKniInfo->pNativeHandle, &level);
+        }
+        if (ret == JAVACALL_OK || ret == JAVACALL_WOULD_BLOCK) {
+            done++;
+        } else {
+            KNI_SetIntArrayElement(levelsHandle, i, -1);
+        }
+    }
+
+    KNI_EndHandles();
+    KNI_ReturnInt(done);
+}
@@ -37,7 +37,7 @@ extern int unicodeToNative(const jchar *ustr, int ulen, unsigned char *bstr, int
 
 /* KNI Implementation **********************************************************************/
 
-/*  protected native int nInit (int appId, int playerId, String URI) ; */
+/*  static native int nInit (int appId, int playerId, String URI) ; */
 KNIEXPORT KNI_RETURNTYPE_INT
 KNIDECL(com_sun_mmedia_HighLevelPlayer_nInit) {
     jint  appId = KNI_GetParameterAsInt(1);
@@ -111,7 +111,7 @@ UnlockAudioMutex();
     KNI_ReturnInt(returnValue);
 }
 
-/*  protected native int nTerm ( int handle ) ; */
+/*  static native int nTerm ( int handle ) ; */
 KNIEXPORT KNI_RETURNTYPE_INT
 KNIDECL(com_sun_mmedia_HighLevelPlayer_nTerm) {
 
@@ -119,13 +119,6 @@ KNIDECL(com_sun_mmedia_HighLevelPlayer_nTerm) {
     KNIPlayerInfo* pKniInfo = (KNIPlayerInfo*)handle;
     jint returnValue = 1;
     
-    KNI_StartHandles(2);
-    KNI_DeclareHandle(instance);
-    KNI_DeclareHandle(clazz);
-    
-    /* Get this object instance and clazz */
-    KNI_GetThisPointer(instance);
-    KNI_GetObjectClass(instance, clazz);
 LockAudioMutex();            
  
     if (pKniInfo && pKniInfo->pNativeHandle) {
@@ -139,11 +132,10 @@ UnlockAudioMutex();
         MMP_FREE(pKniInfo);
     }
 
-    KNI_EndHandles();
     KNI_ReturnInt(returnValue);
 }
 
-/*  protected native String nGetMediaFormat(int handle); */
+/*  static native String nGetMediaFormat(int handle); */
 KNIEXPORT KNI_RETURNTYPE_OBJECT
 KNIDECL(com_sun_mmedia_HighLevelPlayer_nGetMediaFormat) {
     jint handle = KNI_GetParameterAsInt(1);
@@ -166,7 +158,7 @@ UnlockAudioMutex();
     KNI_EndHandlesAndReturnObject(stringObj);
 }
 
-/*  protected native boolean nIsHandledByDevice(int handle); */
+/*  static native boolean nIsHandledByDevice(int handle); */
 KNIEXPORT KNI_RETURNTYPE_BOOLEAN
 KNIDECL(com_sun_mmedia_HighLevelPlayer_nIsHandledByDevice) {
     jint handle = KNI_GetParameterAsInt(1);
@@ -186,7 +178,7 @@ UnlockAudioMutex();
     KNI_ReturnBoolean(returnValue);
 }
 
-/*  protected native boolean nRealize(int handle, String mime); */
+/*  static native void nRealize(int handle, String mime); */
 KNIEXPORT KNI_RETURNTYPE_VOID
 KNIDECL(com_sun_mmedia_HighLevelPlayer_nRealize) {
     jint handle = KNI_GetParameterAsInt(1);
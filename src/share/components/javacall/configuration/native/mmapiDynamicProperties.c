@@ -116,13 +116,44 @@ const char* get_system_property_video_encodings()
     return NULL;
 }
 
+/*
+ * Raw pixel snapshot encodings. They need no encoder of their own: the
+ * pixels of a snapshot in one of the platform encodings are converted
+ * in Java, see FormatConversionUtils.rawSnapshotFormat(). So they are
+ * only offered if the platform supports snapshots at all.
+ */
+#define RAW_SNAPSHOT_ENCODINGS \
+    "encoding=rgb888 encoding=bgr888 encoding=rgb565 encoding=rgb555"
+
+#define MAX_SNAPSHOT_ENCODINGS_PROPERTY_LEN 512
+static char snapshot_encodings_property[MAX_SNAPSHOT_ENCODINGS_PROPERTY_LEN] = {0};
+static javacall_bool snapshot_encodings_property_filled = JAVACALL_FALSE;
+
 const char* get_system_property_video_snapshot_encodings()
 {
     const javacall_media_configuration *cfg = get_configuration();
-    if (cfg != NULL) {
-        return cfg->videoSnapshotEncoding;
+    int len = 0;
+
+    if (cfg == NULL) {
+        return NULL;
     }
-    return NULL;
+    if (snapshot_encodings_property_filled == JAVACALL_FALSE) {
+        if (cfg->videoSnapshotEncoding != NULL) {
+            len = strlen(cfg->videoSnapshotEncoding);
+        }
+        if (len == 0 || len + 1 + (int)sizeof(RAW_SNAPSHOT_ENCODINGS) >
+            MAX_SNAPSHOT_ENCODINGS_PROPERTY_LEN) {
+            /* no snapshots or doesn't fit, leave the platform list as it is */
+            return cfg->videoSnapshotEncoding;
+        }
+        memcpy(snapshot_encodings_property, cfg->videoSnapshotEncoding, len);
+        snapshot_encodings_property[len++] = ' ';
+        memcpy(snapshot_encodings_property + len, RAW_SNAPSHOT_ENCODINGS,
+               sizeof(RAW_SNAPSHOT_ENCODINGS));
+        mmapi_string_delete_duplicates(snapshot_encodings_property);
+        snapshot_encodings_property_filled = JAVACALL_TRUE;
+    }
+    return snapshot_encodings_property;
 }
 
 #define MAX_STREAMABLE_CONTENT_PROPERTY_LEN 1024
@@ -34,6 +34,28 @@ public final class FormatConversionUtils {
      */
     private FormatConversionUtils(){}
 
+    /** xRGB pixels in an int[], one int per pixel */
+    public static final int ARGB = 0;
+    /** xRGB pixels in a byte[], 4 bytes per pixel, big-endian */
+    public static final int XRGB8888 = 1;
+    /** Packed RGB in a byte[], 3 bytes per pixel */
+    public static final int RGB888 = 2;
+    /** Packed BGR in a byte[], 3 bytes per pixel */
+    public static final int BGR888 = 3;
+    /** RGB565 pixels in a short[] */
+    public static final int RGB565 = 4;
+    /** RGB555 pixels in a short[] */
+    public static final int RGB555 = 5;
+    /**
+     * Planar YUV 4:2:0 (I420) in a byte[]: the Y plane followed by the
+     * U and V planes subsampled by two in both directions
+     */
+    public static final int YUV420 = 6;
+    /** RGB565 pixels in a byte[], 2 bytes per pixel, big-endian */
+    public static final int RGB565_BE = 7;
+    /** RGB555 pixels in a byte[], 2 bytes per pixel, big-endian */
+    public static final int RGB555_BE = 8;
+
     /**
      * Converts image int[] array (32-bit per pixel) 
      * to byte[] xRGB array (4 bytes per pixel) 
@@ -46,15 +68,7 @@ public final class FormatConversionUtils {
         if (ints == null) return null;
         
         byte[] bytes = new byte[ints.length * 4];
-
-        int intcount, bytecount;
-        for (intcount = 0, bytecount = 0; intcount < ints.length; ) {
-            bytes[bytecount++] = (byte)((ints[intcount] & 0xFF000000) >> 24);
-            bytes[bytecount++] = (byte)((ints[intcount] & 0x00FF0000) >> 16);
-            bytes[bytecount++] = (byte)((ints[intcount] & 0x0000FF00) >>  8);
-            bytes[bytecount++] = (byte)((ints[intcount] & 0x000000FF)      );
-            intcount++;
-        }
+        fromArgb(ints, 0, bytes, XRGB8888, 0, ints.length);
         return bytes;
     }
 
@@ -70,21 +84,606 @@ public final class FormatConversionUtils {
         if (bytes == null) return null;
         
         int[] ints = new int[bytes.length / 4];
+        toArgb(bytes, XRGB8888, 0, ints, 0, ints.length);
+        return ints;
+    }
+
+    /**
+     * Converts pixels between any two formats other than
+     * <code>YUV420</code>, into an existing array.
+     * <p>
+     * Offsets and strides count array elements of the respective
+     * format, e.g. bytes for <code>RGB888</code>. <code>src</code> and
+     * <code>dst</code> may be the same byte array, converting in place,
+     * if a destination pixel is not larger than a source pixel and
+     * neither the destination offset nor stride exceed the source ones.
+     * Unless one side is <code>ARGB</code>, a row of ints is allocated
+     * as the intermediate.
+     *
+     * @param src       source pixels
+     * @param srcFormat format of the source
+     * @param srcOff    index of the top left source pixel
+     * @param srcStride distance between source rows
+     * @param dst       destination pixels
+     * @param dstFormat format of the destination
+     * @param dstOff    index of the top left destination pixel
+     * @param dstStride distance between destination rows
+     * @param width     width of the converted area
+     * @param height    height of the converted area
+     */
+    public static void convert(Object src, int srcFormat, int srcOff, int srcStride,
+                               Object dst, int dstFormat, int dstOff, int dstStride,
+                               int width, int height) {
+        if (srcFormat == YUV420 || dstFormat == YUV420) {
+            throw new IllegalArgumentException(
+                "Use argbToYuv420/yuv420ToArgb for planar YUV");
+        }
+        if (srcFormat == ARGB) {
+            for (int y = 0; y < height; y++) {
+                fromArgb((int[])src, srcOff, dst, dstFormat, dstOff, width);
+                srcOff += srcStride;
+                dstOff += dstStride;
+            }
+        } else if (dstFormat == ARGB) {
+            for (int y = 0; y < height; y++) {
+                toArgb(src, srcFormat, srcOff, (int[])dst, dstOff, width);
+                srcOff += srcStride;
+                dstOff += dstStride;
+            }
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                toArgb(src, srcFormat, srcOff, row, 0, width);
+                fromArgb(row, 0, dst, dstFormat, dstOff, width);
+                srcOff += srcStride;
+                dstOff += dstStride;
+            }
+        }
+    }
 
-        int intcount, bytecount;
-        for (intcount = 0, bytecount = 0; bytecount < bytes.length; ) {
-            ints[intcount] = 
-                (( ((int)(bytes[bytecount + 0])) << 24) & 0xFF000000) |  //A
-                (( ((int)(bytes[bytecount + 1])) << 16) & 0x00FF0000) |  //R
-                (( ((int)(bytes[bytecount + 2])) <<  8) & 0x0000FF00) |  //G
-                (( ((int)(bytes[bytecount + 3]))      ) & 0x000000FF);   //B
+    /**
+     * Converts a run of pixels of the given format to xRGB ints.
+     * All the converters to xRGB end up here.
+     *
+     * @param src    source pixels
+     * @param format format of the source, not <code>YUV420</code>
+     * @param srcOff index of the first source pixel in elements
+     * @param dst    destination pixels
+     * @param dstOff index of the first destination pixel
+     * @param count  number of pixels to convert
+     */
+    public static void toArgb(Object src, int format, int srcOff,
+                              int[] dst, int dstOff, int count) {
+        int end = dstOff + count;
+        switch (format) {
+        case ARGB:
+            System.arraycopy((int[])src, srcOff, dst, dstOff, count);
+            break;
+        case XRGB8888: {
+            byte[] b = (byte[])src;
+            for (; dstOff < end; srcOff += 4) {
+                dst[dstOff++] = (b[srcOff] << 24) |
+                                ((b[srcOff + 1] & 0xFF) << 16) |
+                                ((b[srcOff + 2] & 0xFF) << 8) |
+                                 (b[srcOff + 3] & 0xFF);
+            }
+            break;
+        }
+        case RGB888: {
+            byte[] b = (byte[])src;
+            for (; dstOff < end; srcOff += 3) {
+                dst[dstOff++] = 0xFF000000 |
+                                ((b[srcOff]     & 0xFF) << 16) |
+                                ((b[srcOff + 1] & 0xFF) << 8) |
+                                 (b[srcOff + 2] & 0xFF);
+            }
+            break;
+        }
+        case BGR888: {
+            byte[] b = (byte[])src;
+            for (; dstOff < end; srcOff += 3) {
+                dst[dstOff++] = 0xFF000000 |
+                                ((b[srcOff + 2] & 0xFF) << 16) |
+                                ((b[srcOff + 1] & 0xFF) << 8) |
+                                 (b[srcOff]     & 0xFF);
+            }
+            break;
+        }
+        case RGB565: {
+            // the low bits of each component are filled from the high
+            // bits, so white stays white
+            short[] sh = (short[])src;
+            while (dstOff < end) {
+                int p = sh[srcOff++];
+                int r = (p >> 11) & 0x1F;
+                int g = (p >> 5) & 0x3F;
+                int b = p & 0x1F;
+                dst[dstOff++] = 0xFF000000 |
+                                (((r << 3) | (r >> 2)) << 16) |
+                                (((g << 2) | (g >> 4)) << 8) |
+                                 ((b << 3) | (b >> 2));
+            }
+            break;
+        }
+        case RGB555: {
+            short[] sh = (short[])src;
+            while (dstOff < end) {
+                int p = sh[srcOff++];
+                int r = (p >> 10) & 0x1F;
+                int g = (p >> 5) & 0x1F;
+                int b = p & 0x1F;
+                dst[dstOff++] = 0xFF000000 |
+                                (((r << 3) | (r >> 2)) << 16) |
+                                (((g << 3) | (g >> 2)) << 8) |
+                                 ((b << 3) | (b >> 2));
+            }
+            break;
+        }
+        case RGB565_BE: {
+            byte[] bb = (byte[])src;
+            for (; dstOff < end; srcOff += 2) {
+                int p = ((bb[srcOff] & 0xFF) << 8) | (bb[srcOff + 1] & 0xFF);
+                int r = p >> 11;
+                int g = (p >> 5) & 0x3F;
+                int b = p & 0x1F;
+                dst[dstOff++] = 0xFF000000 |
+                                (((r << 3) | (r >> 2)) << 16) |
+                                (((g << 2) | (g >> 4)) << 8) |
+                                 ((b << 3) | (b >> 2));
+            }
+            break;
+        }
+        case RGB555_BE: {
+            byte[] bb = (byte[])src;
+            for (; dstOff < end; srcOff += 2) {
+                int p = ((bb[srcOff] & 0xFF) << 8) | (bb[srcOff + 1] & 0xFF);
+                int r = (p >> 10) & 0x1F;
+                int g = (p >> 5) & 0x1F;
+                int b = p & 0x1F;
+                dst[dstOff++] = 0xFF000000 |
+                                (((r << 3) | (r >> 2)) << 16) |
+                                (((g << 3) | (g >> 2)) << 8) |
+                                 ((b << 3) | (b >> 2));
+            }
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
 
-            intcount++;
-            bytecount+=4;
+    /**
+     * Converts a run of xRGB ints to the given format.
+     * All the converters from xRGB end up here.
+     *
+     * @param src    source pixels
+     * @param srcOff index of the first source pixel
+     * @param dst    destination pixels
+     * @param format format of the destination, not <code>YUV420</code>
+     * @param dstOff index of the first destination pixel in elements
+     * @param count  number of pixels to convert
+     */
+    public static void fromArgb(int[] src, int srcOff, Object dst, int format,
+                                int dstOff, int count) {
+        int end = srcOff + count;
+        switch (format) {
+        case ARGB:
+            System.arraycopy(src, srcOff, (int[])dst, dstOff, count);
+            break;
+        case XRGB8888: {
+            byte[] b = (byte[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                b[dstOff++] = (byte)(p >> 24);
+                b[dstOff++] = (byte)(p >> 16);
+                b[dstOff++] = (byte)(p >> 8);
+                b[dstOff++] = (byte)p;
+            }
+            break;
         }
-        return ints;
+        case RGB888: {
+            byte[] b = (byte[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                b[dstOff++] = (byte)(p >> 16);
+                b[dstOff++] = (byte)(p >> 8);
+                b[dstOff++] = (byte)p;
+            }
+            break;
+        }
+        case BGR888: {
+            byte[] b = (byte[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                b[dstOff++] = (byte)p;
+                b[dstOff++] = (byte)(p >> 8);
+                b[dstOff++] = (byte)(p >> 16);
+            }
+            break;
+        }
+        case RGB565: {
+            // the alpha channel is dropped
+            short[] sh = (short[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                sh[dstOff++] = (short)(((p >> 8) & 0xF800) |
+                                       ((p >> 5) & 0x07E0) |
+                                       ((p >> 3) & 0x001F));
+            }
+            break;
+        }
+        case RGB555: {
+            short[] sh = (short[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                sh[dstOff++] = (short)(((p >> 9) & 0x7C00) |
+                                       ((p >> 6) & 0x03E0) |
+                                       ((p >> 3) & 0x001F));
+            }
+            break;
+        }
+        case RGB565_BE: {
+            byte[] b = (byte[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                b[dstOff++] = (byte)(((p >> 16) & 0xF8) | ((p >> 13) & 0x07));
+                b[dstOff++] = (byte)(((p >> 5) & 0xE0) | ((p >> 3) & 0x1F));
+            }
+            break;
+        }
+        case RGB555_BE: {
+            byte[] b = (byte[])dst;
+            while (srcOff < end) {
+                int p = src[srcOff++];
+                b[dstOff++] = (byte)(((p >> 17) & 0x7C) | ((p >> 14) & 0x03));
+                b[dstOff++] = (byte)(((p >> 6) & 0xE0) | ((p >> 3) & 0x1F));
+            }
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    /**
+     * Converts xRGB pixels (32-bit per pixel) to RGB565 pixels.
+     * The alpha channel is dropped.
+     *
+     * @param src    source pixels
+     * @param srcOff index of the first source pixel
+     * @param dst    destination pixels
+     * @param dstOff index of the first destination pixel
+     * @param count  number of pixels to convert
+     */
+    public static void argbToRgb565(int[] src, int srcOff,
+                                    short[] dst, int dstOff, int count) {
+        fromArgb(src, srcOff, dst, RGB565, dstOff, count);
+    }
+
+    /**
+     * Converts xRGB pixels (32-bit per pixel) to RGB555 pixels.
+     * The alpha channel is dropped.
+     *
+     * @param src    source pixels
+     * @param srcOff index of the first source pixel
+     * @param dst    destination pixels
+     * @param dstOff index of the first destination pixel
+     * @param count  number of pixels to convert
+     */
+    public static void argbToRgb555(int[] src, int srcOff,
+                                    short[] dst, int dstOff, int count) {
+        fromArgb(src, srcOff, dst, RGB555, dstOff, count);
+    }
+
+    /**
+     * Converts RGB565 pixels to opaque xRGB pixels (32-bit per pixel).
+     * The low bits of each component are filled from the high bits,
+     * so white stays white.
+     *
+     * @param src    source pixels
+     * @param srcOff index of the first source pixel
+     * @param dst    destination pixels
+     * @param dstOff index of the first destination pixel
+     * @param count  number of pixels to convert
+     */
+    public static void rgb565ToArgb(short[] src, int srcOff,
+                                    int[] dst, int dstOff, int count) {
+        toArgb(src, RGB565, srcOff, dst, dstOff, count);
+    }
+
+    /**
+     * Converts RGB555 pixels to opaque xRGB pixels (32-bit per pixel).
+     *
+     * @param src    source pixels
+     * @param srcOff index of the first source pixel
+     * @param dst    destination pixels
+     * @param dstOff index of the first destination pixel
+     * @param count  number of pixels to convert
+     */
+    public static void rgb555ToArgb(short[] src, int srcOff,
+                                    int[] dst, int dstOff, int count) {
+        toArgb(src, RGB555, srcOff, dst, dstOff, count);
+    }
+
+    /**
+     * Converts packed RGB888 pixels (3 bytes per pixel) to opaque
+     * xRGB pixels (32-bit per pixel).
+     *
+     * @param src    source bytes
+     * @param srcOff index of the first source byte
+     * @param dst    destination pixels
+     * @param dstOff index of the first destination pixel
+     * @param count  number of pixels to convert
+     */
+    public static void rgb888ToArgb(byte[] src, int srcOff,
+                                    int[] dst, int dstOff, int count) {
+        toArgb(src, RGB888, srcOff, dst, dstOff, count);
+    }
+
+    /**
+     * Returns the size of a pixel of a packed format in array elements,
+     * e.g. 3 for <code>RGB888</code> and 1 for <code>ARGB</code>.
+     */
+    public static int pixelSize(int format) {
+        switch (format) {
+        case XRGB8888:
+            return 4;
+        case RGB888:
+        case BGR888:
+            return 3;
+        case RGB565_BE:
+        case RGB555_BE:
+            return 2;
+        case ARGB:
+        case RGB565:
+        case RGB555:
+            return 1;
+        default:
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
+    /**
+     * Maps a raw snapshot type, e.g. <code>encoding=rgb565</code>, to
+     * the format its pixels are stored in. The raw types are added to
+     * <code>video.snapshot.encodings</code> by the native property
+     * callout.
+     *
+     * @return <code>RGB888</code>, <code>BGR888</code>,
+     *         <code>RGB565_BE</code>, <code>RGB555_BE</code>
+     *         or -1 if the type is not raw
+     */
+    public static int rawSnapshotFormat(String imageType) {
+        if (imageType == null) {
+            return -1;
+        }
+        String enc = imageType.toLowerCase();
+        int start = enc.indexOf("encoding=");
+        if (start >= 0) {
+            start += "encoding=".length();
+            int end = enc.indexOf('&', start);
+            enc = (end < 0) ? enc.substring(start) : enc.substring(start, end);
+        }
+        enc = enc.trim();
+        if (enc.equals("rgb888")) {
+            return RGB888;
+        } else if (enc.equals("bgr888")) {
+            return BGR888;
+        } else if (enc.equals("rgb565")) {
+            return RGB565_BE;
+        } else if (enc.equals("rgb555")) {
+            return RGB555_BE;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the width of a BMP image that <code>bmpToArgb</code> can
+     * read: uncompressed (<code>BI_RGB</code>) with 24 or 32 bits per
+     * pixel and complete pixel data.
+     *
+     * @param bmp the whole BMP file
+     * @return the width, or -1 if the data isn't such a BMP
+     */
+    public static int bmpWidth(byte[] bmp) {
+        if (bmp == null || bmp.length < 54 ||
+                bmp[0] != 'B' || bmp[1] != 'M' ||
+                le32(bmp, 14) < 40 || le32(bmp, 30) != 0) {
+            return -1;
+        }
+        int bpp = le16(bmp, 28);
+        int width = le32(bmp, 18);
+        int height = bmpHeight0(bmp);
+        if ((bpp != 24 && bpp != 32) || width <= 0 || height <= 0 ||
+                width > 0x7FFF || height > 0x7FFF) {
+            return -1;
+        }
+        int stride = ((width * bpp / 8) + 3) & ~3;
+        int data = le32(bmp, 10);
+        if (data < 54 || data > bmp.length ||
+                (bmp.length - data) / stride < height) {
+            return -1;
+        }
+        return width;
+    }
+
+    /**
+     * Returns the height of a BMP image accepted by <code>bmpWidth</code>.
+     */
+    public static int bmpHeight(byte[] bmp) {
+        return bmpHeight0(bmp);
+    }
+
+    /**
+     * Converts the pixels of a BMP image accepted by
+     * <code>bmpWidth</code> to xRGB ints, top row first.
+     *
+     * @param bmp        the whole BMP file
+     * @param dst        destination pixels
+     * @param dstOff     index of the top left destination pixel
+     * @param scanlength distance between destination rows
+     */
+    public static void bmpToArgb(byte[] bmp, int[] dst, int dstOff,
+                                 int scanlength) {
+        int width = le32(bmp, 18);
+        int height = bmpHeight0(bmp);
+        int bpp = le16(bmp, 28);
+        int stride = ((width * bpp / 8) + 3) & ~3;
+        // rows are stored bottom-up unless the height is negative
+        boolean bottomUp = le32(bmp, 22) > 0;
+        for (int y = 0; y < height; y++) {
+            int src = le32(bmp, 10) +
+                      (bottomUp ? height - 1 - y : y) * stride;
+            int off = dstOff + y * scanlength;
+            if (bpp == 24) {
+                toArgb(bmp, BGR888, src, dst, off, width);
+            } else {
+                for (int end = off + width; off < end; src += 4) {
+                    dst[off++] = 0xFF000000 |
+                                 ((bmp[src + 2] & 0xFF) << 16) |
+                                 ((bmp[src + 1] & 0xFF) << 8) |
+                                  (bmp[src]     & 0xFF);
+                }
+            }
+        }
+    }
+
+    private static int bmpHeight0(byte[] bmp) {
+        int h = le32(bmp, 22);
+        return h < 0 ? -h : h;
     }
-    
+
+    private static int le16(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int le32(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) |
+               ((b[off + 2] & 0xFF) << 16) | (b[off + 3] << 24);
+    }
+
+    /**
+     * Converts 8-bit palette indices to xRGB pixels (32-bit per pixel).
+     *
+     * @param src     source indices
+     * @param srcOff  index of the first source pixel
+     * @param palette ARGB colors, indices beyond its length give 0
+     * @param dst     destination pixels
+     * @param dstOff  index of the first destination pixel
+     * @param count   number of pixels to convert
+     */
+    public static void paletteToArgb(byte[] src, int srcOff, int[] palette,
+                                     int[] dst, int dstOff, int count) {
+        int colors = palette.length;
+        for (int end = srcOff + count; srcOff < end; ) {
+            int idx = src[srcOff++] & 0xFF;
+            dst[dstOff++] = idx < colors ? palette[idx] : 0;
+        }
+    }
+
+    /**
+     * Converts xRGB pixels to planar YUV 4:2:0 (I420): the full size Y
+     * plane is followed by the U and V planes, each subsampled by two
+     * in both directions. Chroma is averaged over each 2x2 block.
+     * ITU-R BT.601 coefficients are used, with Y in 16..235.
+     *
+     * @param src        source pixels
+     * @param srcOff     index of the top left source pixel
+     * @param scanlength distance between source rows
+     * @param width      image width
+     * @param height     image height
+     * @param dst        destination, at least
+     *                   <code>width*height + 2*((width+1)/2)*((height+1)/2)</code>
+     *                   bytes from dstOff
+     * @param dstOff     index of the first Y sample
+     */
+    public static void argbToYuv420(int[] src, int srcOff, int scanlength,
+                                    int width, int height,
+                                    byte[] dst, int dstOff) {
+        int cw = (width + 1) >> 1;
+        int uOff = dstOff + width * height;
+        int vOff = uOff + cw * ((height + 1) >> 1);
+
+        for (int y = 0; y < height; y += 2) {
+            int row0 = srcOff + y * scanlength;
+            int row1 = (y + 1 < height) ? row0 + scanlength : row0;
+            int yOff0 = dstOff + y * width;
+            int yOff1 = yOff0 + width;
+            for (int x = 0; x < width; x += 2) {
+                int x1 = (x + 1 < width) ? x + 1 : x;
+                int p0 = src[row0 + x];
+                int p1 = src[row0 + x1];
+                int p2 = src[row1 + x];
+                int p3 = src[row1 + x1];
+
+                dst[yOff0 + x] = luma(p0);
+                if (x1 != x) {
+                    dst[yOff0 + x1] = luma(p1);
+                }
+                if (row1 != row0) {
+                    dst[yOff1 + x] = luma(p2);
+                    if (x1 != x) {
+                        dst[yOff1 + x1] = luma(p3);
+                    }
+                }
+
+                int r = ((p0 >> 16) & 0xFF) + ((p1 >> 16) & 0xFF) +
+                        ((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF);
+                int g = ((p0 >> 8) & 0xFF) + ((p1 >> 8) & 0xFF) +
+                        ((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF);
+                int b = (p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF);
+                // the sums are 4x the block average, fold that into the shift
+                int c = (y >> 1) * cw + (x >> 1);
+                dst[uOff + c] = (byte)(((-38 * r - 74 * g + 112 * b + 512) >> 10) + 128);
+                dst[vOff + c] = (byte)(((112 * r - 94 * g - 18 * b + 512) >> 10) + 128);
+            }
+        }
+    }
+
+    /**
+     * Converts planar YUV 4:2:0 (I420), as written by
+     * <code>argbToYuv420</code>, to opaque xRGB pixels.
+     *
+     * @param src        source samples
+     * @param srcOff     index of the first Y sample
+     * @param width      image width
+     * @param height     image height
+     * @param dst        destination pixels
+     * @param dstOff     index of the top left destination pixel
+     * @param scanlength distance between destination rows
+     */
+    public static void yuv420ToArgb(byte[] src, int srcOff,
+                                    int width, int height,
+                                    int[] dst, int dstOff, int scanlength) {
+        int cw = (width + 1) >> 1;
+        int uOff = srcOff + width * height;
+        int vOff = uOff + cw * ((height + 1) >> 1);
+
+        for (int y = 0; y < height; y++) {
+            int yRow = srcOff + y * width;
+            int cRow = (y >> 1) * cw;
+            int d = dstOff + y * scanlength;
+            for (int x = 0; x < width; x++) {
+                int c = 298 * ((src[yRow + x] & 0xFF) - 16);
+                int u = (src[uOff + cRow + (x >> 1)] & 0xFF) - 128;
+                int v = (src[vOff + cRow + (x >> 1)] & 0xFF) - 128;
+                dst[d++] = 0xFF000000 |
+                           (clamp((c + 409 * v + 128) >> 8) << 16) |
+                           (clamp((c - 100 * u - 208 * v + 128) >> 8) << 8) |
+                            clamp((c + 516 * u + 128) >> 8);
+            }
+        }
+    }
+
+    private static int clamp(int c) {
+        return c < 0 ? 0 : (c > 255 ? 255 : c);
+    }
+
+    private static byte luma(int p) {
+        return (byte)(((66 * ((p >> 16) & 0xFF) + 129 * ((p >> 8) & 0xFF) +
+                        25 * (p & 0xFF) + 128) >> 8) + 16);
+    }
+
     /**
      * Creates a copy of a string array.
      * Primary usage of this method is to create copies of 
@@ -0,0 +1,364 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import javax.microedition.media.TimeBase;
+import javax.microedition.media.control.StopTimeControl;
+import com.sun.mmedia.control.FramePacingControl;
+
+/**
+ * Presentation scheduler for players which decode and render
+ * video frames in Java.
+ * <p>
+ * The scheduler owns the media clock of the player: media time is
+ * derived from a <code>TimeBase</code> and the current playback rate,
+ * so the player doesn't have to poll and recompute its own clock.
+ * Presentation threads call <code>schedule()</code> with the media time
+ * of the next frame and are woken up exactly at that deadline, or
+ * earlier if the player is stopped. Frames which are already late by
+ * more than their display period are reported as to be dropped.
+ * <p>
+ * The scheduler is also the <code>FramePacingControl</code> of the
+ * player, reporting the jitter and drop counts.
+ * <p>
+ * All times are in microseconds of media time unless stated otherwise.
+ */
+final class FrameScheduler implements FramePacingControl {
+
+    /** The frame is due and has to be presented */
+    static final int PRESENT = 0;
+    /** The frame is too late and should be dropped */
+    static final int DROP = 1;
+    /** The scheduler was stopped while waiting for the deadline */
+    static final int STOPPED = 2;
+    /** The stop time was reached before the deadline */
+    static final int STOP_TIME_REACHED = 3;
+
+    /** Frames this close to their deadline are presented without waiting */
+    private static final long EARLY_TOLERANCE = 1000;
+
+    /** Normal playback rate in "milli-percentage" */
+    private static final int NORMAL_RATE = 100000;
+
+    /**
+     * Upper bounds in microseconds of the jitter histogram buckets.
+     * The last bucket collects everything above the last bound.
+     */
+    private static final long[] BUCKET_BOUNDS = {
+        1000, 2000, 5000, 10000, 20000, 50000, 100000
+    };
+
+    /** The clock the media time is derived from */
+    private TimeBase timeBase;
+    /** Supplies the stop time, may be null */
+    private final StopTimeControl stopTimeControl;
+
+    /** Media time at the last clock rebase */
+    private long baseMediaTime;
+    /** TimeBase time at the last clock rebase */
+    private long baseTime;
+    /** Playback rate in "milli-percentage" */
+    private int rate = NORMAL_RATE;
+    /** True if the media clock is running */
+    private boolean running;
+
+    /** Guards the clock and is used for waiting */
+    private final Object lock = new Object();
+
+    /* statistics */
+    private int presented;
+    private int dropped;
+    private long jitterSum;
+    private long maxJitter;
+    private final int[] earlyHistogram = new int[BUCKET_BOUNDS.length + 1];
+    private final int[] lateHistogram = new int[BUCKET_BOUNDS.length + 1];
+
+    /**
+     * Creates a stopped scheduler at media time zero.
+     *
+     * @param timeBase        the clock driving the media time
+     * @param stopTimeControl the source of the stop time, or null
+     */
+    FrameScheduler(TimeBase timeBase, StopTimeControl stopTimeControl) {
+        this.timeBase = timeBase;
+        this.stopTimeControl = stopTimeControl;
+    }
+
+    /**
+     * Replaces the clock. The media time is kept continuous.
+     */
+    void setTimeBase(TimeBase master) {
+        synchronized (lock) {
+            baseMediaTime = currentMediaTime();
+            timeBase = master;
+            baseTime = master.getTime();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Starts the media clock from its current media time.
+     */
+    void start() {
+        synchronized (lock) {
+            if (!running) {
+                baseTime = timeBase.getTime();
+                running = true;
+            }
+        }
+    }
+
+    /**
+     * Stops the media clock and wakes up a waiting presentation thread,
+     * which then gets <code>STOPPED</code>.
+     */
+    void stop() {
+        synchronized (lock) {
+            if (running) {
+                baseMediaTime = currentMediaTime();
+                running = false;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the current media time.
+     */
+    long getMediaTime() {
+        synchronized (lock) {
+            return currentMediaTime();
+        }
+    }
+
+    /**
+     * Sets the media time. If the clock is running it continues
+     * from the new position.
+     */
+    void setMediaTime(long now) {
+        synchronized (lock) {
+            baseMediaTime = now;
+            baseTime = timeBase.getTime();
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Changes the playback rate. The media time is kept continuous
+     * and a waiting presentation thread recomputes its deadline.
+     *
+     * @param millirate the new rate in "milli-percentage"
+     */
+    void setRate(int millirate) {
+        synchronized (lock) {
+            baseMediaTime = currentMediaTime();
+            baseTime = timeBase.getTime();
+            rate = millirate;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until a frame is due.
+     *
+     * @param pts         the media time at which the frame is to be shown
+     * @param maxLateness how late the frame may be before it's dropped;
+     *                    zero or less to never drop it
+     * @return <code>PRESENT</code>, <code>DROP</code>, <code>STOPPED</code>
+     *         or <code>STOP_TIME_REACHED</code>
+     */
+    int schedule(long pts, long maxLateness) {
+        synchronized (lock) {
+            long stopTime = getStopTime();
+            long deadline = pts;
+            if (stopTime != StopTimeControl.RESET && stopTime < deadline) {
+                deadline = stopTime;
+            }
+
+            long now;
+            while (true) {
+                if (!running) {
+                    return STOPPED;
+                }
+                now = currentMediaTime();
+                long remaining = deadline - now;
+                if (remaining <= EARLY_TOLERANCE) {
+                    break;
+                }
+                // convert media time to wall clock time at the current rate
+                long wait = (remaining * NORMAL_RATE / rate + 999) / 1000;
+                try {
+                    lock.wait(wait);
+                } catch (InterruptedException e) {
+                    return STOPPED;
+                }
+                // rate, media time or stop time may have changed
+                stopTime = getStopTime();
+                deadline = pts;
+                if (stopTime != StopTimeControl.RESET && stopTime < deadline) {
+                    deadline = stopTime;
+                }
+            }
+
+            if (deadline != pts) {
+                return STOP_TIME_REACHED;
+            }
+
+            long lateness = now - pts;
+            if (maxLateness > 0 && lateness > maxLateness) {
+                dropped++;
+                return DROP;
+            }
+            presented++;
+            record(lateness);
+            return PRESENT;
+        }
+    }
+
+    /**
+     * Waits until the given media time without presenting anything,
+     * e.g. to hold the last frame for its display period.
+     *
+     * @return <code>PRESENT</code> when the time has come,
+     *         <code>STOPPED</code> or <code>STOP_TIME_REACHED</code>
+     */
+    int waitUntil(long mediaTime) {
+        synchronized (lock) {
+            int presentedBefore = presented;
+            int result = schedule(mediaTime, 0);
+            if (result == PRESENT) {
+                // not a frame: keep it out of the statistics
+                presented = presentedBefore;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the number of frames presented.
+     */
+    public int getPresentedFrames() {
+        return presented;
+    }
+
+    /**
+     * Returns the number of frames dropped because they were late.
+     */
+    public int getDroppedFrames() {
+        return dropped;
+    }
+
+    /**
+     * Returns the mean absolute presentation jitter in microseconds.
+     */
+    public long getMeanJitter() {
+        synchronized (lock) {
+            return presented == 0 ? 0 : jitterSum / presented;
+        }
+    }
+
+    /**
+     * Returns the largest absolute presentation jitter in microseconds.
+     */
+    public long getMaxJitter() {
+        return maxJitter;
+    }
+
+    /**
+     * Returns the upper bounds of the histogram buckets in microseconds.
+     * There is one more bucket than bounds for everything above.
+     */
+    public long[] getHistogramBounds() {
+        long[] copy = new long[BUCKET_BOUNDS.length];
+        System.arraycopy(BUCKET_BOUNDS, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the histogram of frames presented early.
+     */
+    public int[] getEarlyHistogram() {
+        synchronized (lock) {
+            int[] copy = new int[earlyHistogram.length];
+            System.arraycopy(earlyHistogram, 0, copy, 0, copy.length);
+            return copy;
+        }
+    }
+
+    /**
+     * Returns a copy of the histogram of frames presented late.
+     */
+    public int[] getLateHistogram() {
+        synchronized (lock) {
+            int[] copy = new int[lateHistogram.length];
+            System.arraycopy(lateHistogram, 0, copy, 0, copy.length);
+            return copy;
+        }
+    }
+
+    /**
+     * Clears the statistics.
+     */
+    public void resetStatistics() {
+        synchronized (lock) {
+            presented = 0;
+            dropped = 0;
+            jitterSum = 0;
+            maxJitter = 0;
+            for (int i = 0; i < earlyHistogram.length; i++) {
+                earlyHistogram[i] = 0;
+                lateHistogram[i] = 0;
+            }
+        }
+    }
+
+    private long currentMediaTime() {
+        if (!running) {
+            return baseMediaTime;
+        }
+        return baseMediaTime + (timeBase.getTime() - baseTime) * rate / NORMAL_RATE;
+    }
+
+    private long getStopTime() {
+        return (stopTimeControl == null) ? StopTimeControl.RESET
+                                         : stopTimeControl.getStopTime();
+    }
+
+    private void record(long lateness) {
+        long jitter = lateness < 0 ? -lateness : lateness;
+        jitterSum += jitter;
+        if (jitter > maxJitter) {
+            maxJitter = jitter;
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && jitter > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        if (lateness < 0) {
+            earlyHistogram[bucket]++;
+        } else {
+            lateHistogram[bucket]++;
+        }
+    }
+}
@@ -99,6 +99,11 @@ class GIFImageDecoder {
         }
     }
 
+    /// True if clearImage() fills the image with an opaque background
+    boolean hasBackground() {
+        return globalPalette != null && backgroundIndex >= 0;
+    }
+
     /// Get current image (after undraw)
     //int [] getCurrentARGB() {
     //    return argb;
@@ -27,9 +27,11 @@ import java.io.IOException;
 import java.util.Vector;
 
 import javax.microedition.media.Control;
+import javax.microedition.media.Manager;
 import javax.microedition.media.Player;
 import javax.microedition.media.MediaException;
 import javax.microedition.media.PlayerListener;
+import javax.microedition.media.TimeBase;
 import javax.microedition.media.control.VideoControl;
 import javax.microedition.media.control.FramePositioningControl;
 import javax.microedition.media.control.RateControl;
@@ -54,6 +56,9 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     /* a full GIF frame, also called the reference frame */
     private int[] referenceFrame = null;
 
+    /* true if the movie may have transparent pixels, found by scanFrames */
+    private boolean transparent;
+
     /* the play thread */
     private Thread playThread; // default is null
 
@@ -64,20 +69,14 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      */
     private boolean done;
 
-    /* Used to synchronize access to mediatime- and rate- ralated fields
-     */
-    private Object mediaTimeLock = new Object();
-
-    /* the start time in milliseconds.
-     * startTime is initialized upon start of the play thread.
-     */
-    private long startTime;
+    /* the media clock and frame presentation scheduler */
+    private FrameScheduler scheduler;
 
-    /* early threshold value for the display time in milliseconds. */
-    private long EARLY_THRESHOLD = 100;
+    /* true if a frame has been decoded but its display time has not come yet */
+    private boolean framePending;
 
-    /* minimum wait time */
-    private static final long MIN_WAIT = 50;
+    /* true if the last decoded frame was dropped and not rendered yet */
+    private boolean pendingRender;
 
     /* For zero duration GIFs (e.g. non-animated) wait time between STARTED and END_OF_MEDIA */
     private static final long ZERO_DURATION_WAIT = 50;
@@ -88,11 +87,22 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     /* the frame count, shows number of rendered frames, and index of next frame to render  */
     private int frameCount;
 
-    /* Last frame duration while scanning frames */
+    /* Delay of the frame being read, from its graphic control extension */
     private int scanFrameTime;
 
-    /* elapsed media time since start of stream (default rate) */
-    private long mediaTimeOffset;
+    /* true if the frame table is built while the frames are read for
+     * playback, instead of scanning the whole stream on realize
+     */
+    private boolean progressive;
+
+    /* true once the frame table covers all frames of the movie */
+    private boolean indexComplete;
+
+    /* the sum of the durations in the frame table (default rate) */
+    private long indexedDuration;
+
+    /* GIFs up to this size are scanned for their frame table on realize */
+    private static final long PRESCAN_LIMIT = 64 * 1024;
 
     /* the display time of the last read & created frame (default rate) */
     private long displayTime; // default is 0
@@ -143,8 +153,8 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     /**
      * Retrieves the specified control object for the
      * GIF Player. The following controls are currently
-     * implemented: VideoControl, FramePositioningControl
-     * and RateControl and StopTimeControl.
+     * implemented: VideoControl, FramePositioningControl,
+     * RateControl, StopTimeControl and FramePacingControl.
      *
      * @param  type       the requested control type.
      * @return            the control object if available,
@@ -170,6 +180,9 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
 
                 return getOwner();
             }
+        } else if (type.equals(HighLevelPlayer.fpacName)) {
+            // frame pacing statistics
+            return scheduler;
         }
         return null;
     }
@@ -189,14 +202,25 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      * @return    the media time in microseconds.
      */
     protected long doGetMediaTime() {
-        synchronized( mediaTimeLock ) {
-            long mks = ( 0 != startTime ) ? getMicrosecondsFromStart() : 0;
-            return ( mediaTimeOffset + mks ) * rateControl.getRate() / 100000;
+        return scheduler.getMediaTime();
+    }
+
+    /**
+     * Re-bases the media clock on the new master time base.
+     */
+    void setTimeBase(TimeBase master) {
+        if (scheduler != null) {
+            scheduler.setTimeBase(clockFor(master));
         }
     }
 
-    private long getMicrosecondsFromStart() {
-        return (System.currentTimeMillis() - startTime) * 1000;
+    /**
+     * Returns the clock the media time is derived from. Without a master
+     * that's the system time base, not the player's own
+     * <code>TimeBase</code>, which is derived from the media time.
+     */
+    private static TimeBase clockFor(TimeBase master) {
+        return (master == null) ? Manager.getSystemTimeBase() : master;
     }
 
     /**
@@ -213,15 +237,13 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
         if (getOwner().getState() == Player.STARTED)
             doStop();
 
-        if (now > duration)
+        if (duration != Player.TIME_UNKNOWN && now > duration)
             now = duration;
 
-        synchronized( mediaTimeLock ) {
-            mediaTimeOffset = now * 100000 / rateControl.getRate();
-        }
+        scheduler.setMediaTime(now);
 
         try {
-            int count = framePosControl.mapTimeToFrame(now);
+            int count = timeToFrame(now);
             //System.out.println("SetMediaTime to " + now + " (frame = " + count + "), frameCount=" + frameCount);
 
             if (count + 1 < frameCount) {
@@ -231,12 +253,17 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             }
 
             // skip frames
-            while (frameCount <= count && getFrame())
+            while (frameCount <= count && getFrame()) {
                 // We need to decode all frames to have the correct pixels
                 // for frames with transparent color
                 decodeFrame();
+                // the frame table may have grown in progressive mode
+                count = timeToFrame(now);
+            }
 
             displayTime = getDuration(frameCount) / 1000;
+            framePending = false;
+            pendingRender = false;
             //System.out.println("SetMediaTime: displayTime = " + displayTime + "; frameCount=" + frameCount);
 
             renderFrame();
@@ -261,21 +288,39 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     protected void doRealize() throws MediaException {          
         duration = Player.TIME_UNKNOWN;
         frameCount = 0;
-        mediaTimeOffset = 0;
 
         seekType = getOwner().stream.getSeekType();
 
+        // Scanning needs to read the whole stream before playback
+        // can start, so it is done only for small files which can
+        // be rewound cheaply. Otherwise the frame table is built
+        // during playback and the duration is updated at its end.
+        long length = getOwner().stream.getContentLength();
+        progressive = seekType != SourceStream.RANDOM_ACCESSIBLE ||
+                      length <= 0 || length > PRESCAN_LIMIT;
+
         // parse GIF header
         if (parseHeader()) {
-            scanFrames();
+            if (progressive) {
+                frameTimes = new Vector();
+                indexedDuration = 0;
+                indexComplete = false;
+                transparent = !imageDecoder.hasBackground();
+            } else {
+                scanFrames();
+            }
 
             // initialize video control
             videoRenderer = Configuration.getConfiguration().getVideoRenderer(
                     getOwner());
             videoControl = (VideoControl)videoRenderer.getVideoControl();
-            videoRenderer.initRendering(VideoRenderer.XRGB888 | 
-                                        VideoRenderer.USE_ALPHA,
-                                        videoWidth, videoHeight);
+            // frames are decoded to ARGB, which every renderer accepts
+            // and the renderers in the tree paint without conversion
+            int mode = VideoRenderer.XRGB888;
+            if (transparent) {
+                mode |= VideoRenderer.USE_ALPHA;
+            }
+            videoRenderer.initRendering(mode, videoWidth, videoHeight);
 
             // initialize frame positioning control
             framePosControl = new FramePosCtrl();
@@ -283,6 +328,10 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             // initialize rate control
             rateControl = new RateCtrl();
 
+            // media clock, driven by the player's master time base
+            scheduler = new FrameScheduler(
+                    clockFor(getOwner().getMasterTimeBase()), getOwner());
+
             referenceFrame = null;
 
         } else
@@ -341,11 +390,9 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
                 }
             }).start();
         } else {
-            synchronized( mediaTimeLock ) {
-                startTime = System.currentTimeMillis(); 
-            }
-
             if (stopped) {
+                scheduler.start();
+
                 // wake up existing play thread
                 stopped = false;
             
@@ -353,11 +400,15 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
                     playLock.notifyAll();
                 }
             } else {
-                displayTime = getFrameInterval(frameCount) / 1000;
+                displayTime = getDuration(frameCount) / 1000;
+                framePending = false;
+                pendingRender = false;
                 
                 // Ensure that previous thread has finished
                 playThreadFinished();
 
+                scheduler.start();
+
                 synchronized (playLock) {
                     if (playThread == null) {
                         // Check for null is a protection against several
@@ -387,14 +438,17 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
 
         synchronized (playLock) {
             try {
+                // the flag goes first, so the woken play thread parks
+                // instead of scheduling the next frame again
                 if (playThread != null) {
                     stopped = true;
-                    playLock.notifyAll();
+                }
 
-                    synchronized( mediaTimeLock ) {
-                        mediaTimeOffset = getMicrosecondsFromStart();
-                        startTime = 0;
-                    }
+                // freeze the media clock and wake up the play thread
+                scheduler.stop();
+
+                if (playThread != null) {
+                    playLock.notifyAll();
 
                     playLock.wait();
                 }
@@ -481,12 +535,9 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             // send an end-of-media if the player was not stopped
             // and the run loop terminates because the end of media
             // was reached.
-            synchronized( mediaTimeLock ) {
-                mediaTimeOffset = getMicrosecondsFromStart();
-                startTime = 0;
-                getOwner().sendEvent(PlayerListener.END_OF_MEDIA,
-                          new Long(mediaTimeOffset * rateControl.getRate() / 100000));
-            }
+            scheduler.stop();
+            getOwner().sendEvent(PlayerListener.END_OF_MEDIA,
+                                 new Long(scheduler.getMediaTime()));
         }
 
         synchronized (playLock) {
@@ -501,11 +552,8 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      */
     private void stopTimeReached() {
         // stop the player
-        synchronized( mediaTimeLock ) {
-            mediaTimeOffset = getMicrosecondsFromStart();
-            startTime = 0;
-        }
         stopped = true;
+        scheduler.stop();
         // send STOPPED_AT_TIME event
         getOwner().satev();
     }
@@ -515,10 +563,17 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      */
     private void playThreadFinished() {
         synchronized (playLock) {
-            // stop the playThread if it was created and started
+            // the flag goes first, so the woken play thread terminates
             if (playThread != null) {
                 done = true;
-                
+            }
+
+            // wake up the play thread if it waits for a frame deadline
+            if (scheduler != null)
+                scheduler.stop();
+
+            // stop the playThread if it was created and started
+            if (playThread != null) {
                 // wake up the play thread if it was stopped
                 playLock.notifyAll();
                 
@@ -558,6 +613,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
 
     /**
      * Maps media time to the corresponding frame.
+     * In progressive mode only the frames read so far are known.
      *
      * Returns the frame number.
      */
@@ -601,95 +657,61 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     }
 
     /**
-     * Decodes and renders a GIF Frame.
+     * Decodes a GIF Frame and renders it at its display time.
      */
     private void processFrame() {
-        // the media time in milliseconds
-        long mediaTime = doGetMediaTime() / 1000;
-
-        // frame interval in milliseconds
-        long frameInterval = getFrameInterval(frameCount) / 1000;
-        //System.out.println("Frame: " + frameCount + ", length: " + frameInterval + ", at: " + mediaTime + ", displayTime: " + displayTime);
-
-        if (mediaTime + EARLY_THRESHOLD > displayTime) {
+        if (!framePending) {
             // get the next frame
             if (!getFrame()) {
+                if (pendingRender) {
+                    // show the last frame even if it came late
+                    renderFrame();
+                    pendingRender = false;
+                }
                 // wait until end of last frame
-                synchronized (playLock) {
-                    try {
-                        long waitTime = (displayTime - mediaTime) * 100000 / rateControl.getRate();
-
-                        if (waitTime > 0)
-                            playLock.wait(waitTime);
-                                    
-                    } catch (InterruptedException e) {
-                        // nothing to do
-                    }               
+                int result = scheduler.waitUntil(displayTime * 1000);
+                if (result == FrameScheduler.PRESENT) {
+                    done = true;
+                } else if (result == FrameScheduler.STOP_TIME_REACHED) {
+                    stopTimeReached();
                 }
-                done = true;
                 return;
             }
-            decodeFrame();
-
-            // frame interval in milliseconds
-            frameInterval = getFrameInterval(frameCount) / 1000;
 
-            // move display time to end of frame
-            displayTime += frameInterval;
+            // decode ahead of the display time; all frames are decoded
+            // to have the correct pixels for frames with transparent color
+            decodeFrame();
+            framePending = true;
         }
 
-        // render last read frame
-        renderFrame();
+        // frame interval in milliseconds
+        long frameInterval = getFrameInterval(frameCount) / 1000;
+
+        // displayTime is the end of the frame on the screen,
+        // i.e. the presentation time of the frame just decoded
+        int result = scheduler.schedule(displayTime * 1000, frameInterval * 1000);
+        //System.out.println("Frame: " + frameCount + ", length: " + frameInterval + ", displayTime: " + displayTime + ", result: " + result);
 
-        // report that stop time has been reached if
-        // the mediaTime is greater or equal to stop time.      
-        if ( getOwner().getStopTime() != StopTimeControl.RESET &&
-            doGetMediaTime() >= getOwner().getStopTime() ) {
+        if (result == FrameScheduler.STOPPED) {
+            // keep the decoded frame for the restart
+            return;
+        }
+        if (result == FrameScheduler.STOP_TIME_REACHED) {
+            // the stop time falls into the frame on the screen
             stopTimeReached();
+            return;
         }
-       
-        if (!stopped) {
-            // threshold levels in milliseconds
-            // It makes playback falter if frame intervals differ
-            //EARLY_THRESHOLD = 250;
-            //if (frameInterval > 0 && frameInterval < EARLY_THRESHOLD)
-            //    EARLY_THRESHOLD = frameInterval / 2;
-                        
-            mediaTime = doGetMediaTime() / 1000;
 
-            if (mediaTime + EARLY_THRESHOLD <= displayTime) {
-                // wait for a bit
-                synchronized (playLock) {
-                    try {
-                        if (!done) {
-                            mediaTime = doGetMediaTime() / 1000;
-
-                            long waitTime = (displayTime - EARLY_THRESHOLD - mediaTime)
-                                * 100000 / rateControl.getRate();
-                                
-                            while (!stopped && waitTime > 0) {
-                                if (waitTime > MIN_WAIT) {
-                                    playLock.wait(MIN_WAIT);
-                                    mediaTime = doGetMediaTime() / 1000;
-                                    waitTime = (displayTime - EARLY_THRESHOLD - 
-                                           mediaTime) * 100000 / rateControl.getRate();
-                                } else {
-                                    playLock.wait(waitTime);
-                                    waitTime = 0;
-                                }
-                                    
-                                if (getOwner().getStopTime() != StopTimeControl.RESET &&
-                                    doGetMediaTime() >= getOwner().getStopTime()) {
-                                    stopTimeReached();
-                                }
-                            }
-                        }
-                    } catch (InterruptedException e) {
-                        // nothing to do
-                    }           
-                }
-            }
+        if (result == FrameScheduler.PRESENT) {
+            renderFrame();
+            pendingRender = false;
+        } else { // DROP
+            pendingRender = true;
         }
+        framePending = false;
+
+        // move display time to end of frame
+        displayTime += frameInterval;
     }
     
     /*
@@ -697,7 +719,10 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      * to be able to read it again
      */
     private void seekFirstFrame() throws IOException {
-        if (seekType == SourceStream.RANDOM_ACCESSIBLE) {
+        if (getOwner().stream.tell() == firstFramePos) {
+            // nothing read yet, e.g. right after a progressive realize;
+            // this also works for streams which can't seek
+        } else if (seekType == SourceStream.RANDOM_ACCESSIBLE) {
             // seek to the beginning of the first frame
             getOwner().stream.seek(firstFramePos);
         } else { // SEEKABLE_TO_START           
@@ -717,8 +742,9 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      * Renders a frame.
      */
     private void renderFrame() {
-        if (referenceFrame != null)
+        if (referenceFrame != null) {
             videoRenderer.render(referenceFrame);
+        }
     }
     
     /**
@@ -733,6 +759,10 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
 
         frameTimes = new Vector();
 
+        // without a background color the pixels outside
+        // of the first frame remain transparent
+        transparent = !imageDecoder.hasBackground();
+
         boolean eos = false;
         
         do {
@@ -762,6 +792,8 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
 
         // reset the frame counter
         frameCount = 0;
+        indexedDuration = duration;
+        indexComplete = true;
 
         try {
             seekFirstFrame();
@@ -785,6 +817,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
         boolean eos = false;
         
         imageData = null;
+        scanFrameTime = 0;
         
         do {
             int id;
@@ -809,9 +842,21 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
 
         if (imageData != null) {
             frameCount++;
+            if (frameCount > frameTimes.size()) {
+                // progressive mode: a frame seen for the first time
+                frameTimes.addElement(new Long(scanFrameTime));
+                indexedDuration += scanFrameTime;
+            }
             return true;
         }
 
+        if (!indexComplete) {
+            // progressive mode: the whole movie has been read once
+            indexComplete = true;
+            duration = indexedDuration;
+            getOwner().sendEvent(PlayerListener.DURATION_UPDATED, new Long(duration));
+        }
+
         return false;
     }
 
@@ -1208,9 +1253,13 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             // ERROR: invalid block size in graphic control
         //}
 
+        // delay time
+        scanFrameTime = readShort(graphicControl, 2) * 10000;
+
         if (scan) {
-            // delay time
-            scanFrameTime = readShort(graphicControl, 2) * 10000;
+            // transparency flag
+            if ((graphicControl[1] & 0x01) == 1)
+                transparent = true;
         } else {
             // packed field
             int flags = graphicControl[1] & 0xff;
@@ -1300,6 +1349,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             // frame.
             getOwner().EOM = false;
 
+            // in progressive mode only the frames read so far are known
             if (frameNumber < 0) {
                 frameNumber = 0;
             } else if (frameNumber >= frameTimes.size()) {
@@ -1423,7 +1473,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
          * If the conversion fails, -1 is returned.
          */
         public int mapTimeToFrame(long mediaTime) {         
-            if (mediaTime < 0 || mediaTime > duration) {
+            if (mediaTime < 0 || mediaTime > indexedDuration) {
                 return -1;
             }
 
@@ -1487,22 +1537,16 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
          * @see #getRate
          */
         public int setRate(int millirate) {
-            synchronized( mediaTimeLock ) {
-                long oldRate = rate;
-                if (millirate < MIN_PLAYBACK_RATE) {
-                    rate = MIN_PLAYBACK_RATE;
-                } else if (millirate > MAX_PLAYBACK_RATE) {
-                    rate = MAX_PLAYBACK_RATE;
-                } else {
-                    rate = millirate;
-                }
-                if (0 != startTime) {
-                    mediaTimeOffset = (long)((System.currentTimeMillis() - startTime)
-                        * 1000 * ((double)oldRate / rate - 1) 
-                        + mediaTimeOffset * (double)oldRate / rate);
-                }
-                return rate;
+            if (millirate < MIN_PLAYBACK_RATE) {
+                rate = MIN_PLAYBACK_RATE;
+            } else if (millirate > MAX_PLAYBACK_RATE) {
+                rate = MAX_PLAYBACK_RATE;
+            } else {
+                rate = millirate;
             }
+            // the scheduler keeps the media time continuous
+            scheduler.setRate(rate);
+            return rate;
         }
 
         /**
@@ -0,0 +1,41 @@
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+/**
+ *  Optional companion of <code>ImageAccess</code> for accessors that can
+ *  copy image pixels into an array owned by the caller, so callers that
+ *  reuse a buffer per frame don't allocate a new one every time.
+ *  Callers check for it with <code>instanceof</code> and fall back to
+ *  <code>ImageAccess.getRGBIntImageData(Object)</code> otherwise.
+ */
+public interface ImagePixelAccess {
+    
+    /* 
+     * Copies RGB image data (32-bit int per pixel) into the given array,
+       which must hold at least width * height pixels. Returns false
+       if Object is not Image or the array is too small.
+     */
+    boolean getRGBIntImageData(Object image, int[] data);
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import javax.microedition.media.Manager;
+import javax.microedition.media.MediaException;
+import javax.microedition.media.Player;
+import javax.microedition.media.PlayerListener;
+
+/**
+ * Tone player rendering the tones in Java, used by
+ * <code>Manager.playTone</code> when the native tone player is missing.
+ * <p>
+ * Tones are mixed by a <code>ToneSynthesizer</code>. Each call renders
+ * the remainder of all sounding tones, the new one included, and plays
+ * that as 16 bit PCM through an <code>audio/x-wav</code> player, which
+ * replaces the previous one. So overlapping calls are heard mixed
+ * instead of cutting each other off.
+ * <p>
+ * Mixes up to <code>MAX_MIX_MS</code> long are rendered into one WAV
+ * buffer which is kept for the next call; longer ones get a buffer of
+ * their own. The player is closed as soon as its mix has played.
+ */
+public final class SynthTonePlayer implements TonePlayer {
+
+    /** Output sample rate in Hz */
+    private static final int SAMPLE_RATE = 8000;
+    /** Notes sounding at once */
+    private static final int VOICES = 8;
+    /** Size of the RIFF/WAVE header */
+    private static final int WAV_HEADER = 44;
+    /** Longest mix rendered into the shared buffer, in ms */
+    private static final int MAX_MIX_MS = 4000;
+    /** Frames rendered at a time before packing them into the WAV */
+    private static final int CHUNK = 256;
+
+    private final ToneSynthesizer synth =
+        new ToneSynthesizer(SAMPLE_RATE, VOICES);
+
+    /** Rendered samples on their way into the WAV buffer */
+    private final short[] chunk = new short[CHUNK];
+    /** WAV image of the current mix, allocated on first use */
+    private byte[] wav;
+    /** Stream over <code>wav</code>, rewound for every mix */
+    private WavStream wavStream;
+    /** The player of the current mix */
+    private Player player;
+    /** System time at which the current mix was started */
+    private long mixStart;
+
+    /* the tones of the current mix, at most one per voice */
+    private final int[] notes = new int[VOICES];
+    private final int[] durations = new int[VOICES];
+    private final int[] volumes = new int[VOICES];
+    /** start of each tone in ms, relative to the start of the mix */
+    private final int[] starts = new int[VOICES];
+    private int count;
+
+    /** Closes the player of a mix once it has played */
+    private final PlayerListener endListener = new PlayerListener() {
+        public void playerUpdate(Player p, String event, Object data) {
+            if (PlayerListener.END_OF_MEDIA.equals(event)) {
+                mixEnded(p);
+            }
+        }
+    };
+
+    public synchronized int playTone(int note, int duration, int volume) {
+        int now = (int)(System.currentTimeMillis() - mixStart);
+        if (player == null) {
+            count = 0;
+        }
+
+        // keep the tones still sounding, relative to the new mix
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int start = starts[i] - now;
+            if (start + durations[i] > 0) {
+                notes[kept] = notes[i];
+                durations[kept] = durations[i];
+                volumes[kept] = volumes[i];
+                starts[kept] = start;
+                kept++;
+            }
+        }
+        count = kept;
+        if (count == VOICES) {
+            // drop the tone which ends first
+            int first = 0;
+            for (int i = 1; i < count; i++) {
+                if (starts[i] + durations[i] < starts[first] + durations[first]) {
+                    first = i;
+                }
+            }
+            count--;
+            notes[first] = notes[count];
+            durations[first] = durations[count];
+            volumes[first] = volumes[count];
+            starts[first] = starts[count];
+        }
+        notes[count] = note;
+        durations[count] = duration;
+        volumes[count] = volume;
+        starts[count] = 0;
+        count++;
+
+        synth.allNotesOff();
+        for (int i = 0; i < count; i++) {
+            synth.noteOn(notes[i], durations[i], volumes[i],
+                         synth.msToFrames(-starts[i]));
+        }
+
+        // the old player may still read the buffer which is rewritten
+        closePlayer();
+        int frames = synth.getRemainingFrames();
+        int size = WAV_HEADER + frames * 2;
+        ByteArrayInputStream in;
+        if (frames <= synth.msToFrames(MAX_MIX_MS)) {
+            if (wav == null) {
+                wav = new byte[WAV_HEADER + synth.msToFrames(MAX_MIX_MS) * 2];
+                wavStream = new WavStream(wav);
+            }
+            writeWav(wav, frames);
+            wavStream.rewind(size);
+            in = wavStream;
+        } else {
+            byte[] b = new byte[size];
+            writeWav(b, frames);
+            in = new ByteArrayInputStream(b);
+        }
+        mixStart = System.currentTimeMillis();
+
+        try {
+            Player p = Manager.createPlayer(in, "audio/x-wav");
+            p.addPlayerListener(endListener);
+            player = p;
+            p.start();
+        } catch (MediaException e) {
+            closePlayer();
+            return RESULT_FAIL;
+        } catch (IOException e) {
+            closePlayer();
+            return RESULT_FAIL;
+        }
+        return RESULT_OK;
+    }
+
+    public synchronized void stopTone() {
+        synth.allNotesOff();
+        count = 0;
+        closePlayer();
+    }
+
+    private void closePlayer() {
+        if (player != null) {
+            player.close();
+            player = null;
+        }
+    }
+
+    /**
+     * Releases the player of a mix which has played to the end.
+     */
+    private void mixEnded(Player p) {
+        synchronized (this) {
+            if (p != player) {
+                return;
+            }
+            player = null;
+        }
+        // outside the lock: close() queues an event for the thread
+        // this listener runs on
+        p.close();
+    }
+
+    /**
+     * Renders the remaining frames of the synthesizer as 16 bit mono
+     * PCM behind a RIFF/WAVE header.
+     */
+    private void writeWav(byte[] wav, int frames) {
+        int dataSize = frames * 2;
+        int p = 0;
+        p = putTag(wav, p, "RIFF");
+        p = putInt(wav, p, 36 + dataSize, 4);
+        p = putTag(wav, p, "WAVE");
+        p = putTag(wav, p, "fmt ");
+        p = putInt(wav, p, 16, 4);              // fmt chunk size
+        p = putInt(wav, p, 1, 2);               // PCM
+        p = putInt(wav, p, 1, 2);               // mono
+        p = putInt(wav, p, SAMPLE_RATE, 4);
+        p = putInt(wav, p, SAMPLE_RATE * 2, 4); // byte rate
+        p = putInt(wav, p, 2, 2);               // block align
+        p = putInt(wav, p, 16, 2);              // bits per sample
+        p = putTag(wav, p, "data");
+        p = putInt(wav, p, dataSize, 4);
+        while (frames > 0) {
+            int n = (frames < CHUNK) ? frames : CHUNK;
+            synth.render(chunk, 0, n);
+            for (int i = 0; i < n; i++) {
+                wav[p++] = (byte)chunk[i];
+                wav[p++] = (byte)(chunk[i] >> 8);
+            }
+            frames -= n;
+        }
+    }
+
+    private static int putTag(byte[] b, int p, String tag) {
+        for (int i = 0; i < 4; i++) {
+            b[p++] = (byte)tag.charAt(i);
+        }
+        return p;
+    }
+
+    private static int putInt(byte[] b, int p, int v, int size) {
+        for (int i = 0; i < size; i++) {
+            b[p++] = (byte)(v >> (8 * i));
+        }
+        return p;
+    }
+
+    /**
+     * A <code>ByteArrayInputStream</code> over a buffer whose used
+     * length changes from mix to mix.
+     */
+    private static final class WavStream extends ByteArrayInputStream {
+        WavStream(byte[] buf) {
+            super(buf);
+        }
+
+        /** Starts over, reading the first <code>length</code> bytes */
+        void rewind(int length) {
+            pos = 0;
+            mark = 0;
+            count = length;
+        }
+    }
+}
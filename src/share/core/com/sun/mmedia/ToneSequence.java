@@ -0,0 +1,520 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.util.Hashtable;
+import java.util.Vector;
+import javax.microedition.media.control.ToneControl;
+import com.sun.mmedia.control.DualToneControl;
+
+/**
+ * A validated tone sequence in the format defined by
+ * <code>ToneControl</code> and <code>DualToneControl</code>.
+ * <p>
+ * Compiling a sequence checks it once. Only when the event list is
+ * first asked for are all blocks, block plays and repeats expanded into
+ * a flat list of events, each with its notes, volume and timing in
+ * milliseconds, taking 8 bytes per event. Players which hand the
+ * sequence to native code never pay for that. Compiled sequences are
+ * cached by content, so players and sequencers using the same sequence
+ * again share one instance and skip the check.
+ * <p>
+ * Compiled sequences are immutable.
+ */
+public final class ToneSequence {
+
+    /** Note value of events which don't play a second tone */
+    public static final int NO_NOTE = -1;
+
+    /** Default tempo modifier, 120 bpm */
+    private static final int DEFAULT_TEMPO = 30;
+    /** Default resolution, 1/64 of a whole note */
+    private static final int DEFAULT_RESOLUTION = 64;
+    /** Sequences expanding to more events aren't flattened */
+    private static final int MAX_EVENTS = 8192;
+    /** Number of compiled sequences kept in the cache */
+    private static final int CACHE_SIZE = 16;
+
+    /** hash code -> ToneSequence */
+    private static final Hashtable cache = new Hashtable();
+    /** hash codes of the cached sequences, least recently used first */
+    private static final Vector lru = new Vector(CACHE_SIZE);
+
+    private final byte[] sequence;
+    private final int dualToneOffset;
+
+    /** Marks a defined block while the sequence is only checked */
+    private static final int[] NO_EVENTS = new int[0];
+
+    /*
+     * flat event list, built by flatten(), null if the sequence expands
+     * to too many events. events holds note, second note and volume in
+     * bits 0-7, 8-15 and 16-23, durations follow from the start times.
+     */
+    private boolean flattened;
+    private int eventCount;
+    private int[] events;
+    private int[] starts;
+    private int totalDuration;
+
+    /* compiler state */
+    private int pos;
+    private int tempo = DEFAULT_TEMPO;
+    private int resolution = DEFAULT_RESOLUTION;
+    private int[][] blocks;
+    /** expand events into bEvents, false while only checking */
+    private boolean expand;
+    /** note, second note and ticks in bits 0-7, 8-15 and 16-23 */
+    private int[] bEvents;
+    private int bCount;
+    private boolean overflow;
+
+    private ToneSequence(byte[] sequence) {
+        this.sequence = sequence;
+        dualToneOffset = compile();
+    }
+
+    /**
+     * Compiles a tone sequence or gets it from the cache.
+     *
+     * @param sequence the tone sequence
+     * @return the compiled sequence
+     * @exception IllegalArgumentException Thrown if the sequence is
+     * <code>null</code> or invalid.
+     */
+    public static ToneSequence compile(byte[] sequence) {
+        if (sequence == null) {
+            throw new IllegalArgumentException("null tone sequence");
+        }
+        int hash = hashCode(sequence);
+        Integer key = new Integer(hash);
+
+        synchronized (cache) {
+            ToneSequence ts = (ToneSequence)cache.get(key);
+            if (ts != null && ts.matches(sequence)) {
+                lru.removeElement(key);
+                lru.addElement(key);
+                return ts;
+            }
+        }
+
+        // the copy protects the cached sequence from changes by the caller
+        byte[] copy = new byte[sequence.length];
+        System.arraycopy(sequence, 0, copy, 0, copy.length);
+        ToneSequence ts = new ToneSequence(copy);
+
+        synchronized (cache) {
+            if (cache.put(key, ts) != null) {
+                lru.removeElement(key);
+            }
+            lru.addElement(key);
+            if (lru.size() > CACHE_SIZE) {
+                cache.remove(lru.elementAt(0));
+                lru.removeElementAt(0);
+            }
+        }
+        return ts;
+    }
+
+    /**
+     * Returns true if the sequence uses <code>DUALTONE</code> events.
+     */
+    public boolean hasDualTones() {
+        return dualToneOffset >= 0;
+    }
+
+    /**
+     * Returns the offset of the first <code>DUALTONE</code> event,
+     * -1 if there is none.
+     */
+    public int getDualToneOffset() {
+        return dualToneOffset;
+    }
+
+    /**
+     * Returns the number of events in the expanded sequence, -1 if the
+     * sequence expands to too many events to be flattened. Expands the
+     * sequence on the first call; the event accessors below may only be
+     * used after this returned a count.
+     */
+    public synchronized int getEventCount() {
+        return flatten() ? eventCount : -1;
+    }
+
+    /**
+     * Returns the note of an event, <code>ToneControl.SILENCE</code>
+     * for a rest.
+     */
+    public int getNote(int event) {
+        return (byte)events[event];
+    }
+
+    /**
+     * Returns the second note of a dual tone event,
+     * <code>NO_NOTE</code> for other events.
+     */
+    public int getSecondNote(int event) {
+        return (byte)(events[event] >> 8);
+    }
+
+    /**
+     * Returns the volume of an event, 0 to 100.
+     */
+    public int getVolume(int event) {
+        return events[event] >>> 16;
+    }
+
+    /**
+     * Returns the start time of an event in milliseconds.
+     */
+    public int getStartTime(int event) {
+        return starts[event];
+    }
+
+    /**
+     * Returns the duration of an event in milliseconds.
+     */
+    public int getDuration(int event) {
+        int end = (event + 1 < eventCount) ? starts[event + 1] : totalDuration;
+        return end - starts[event];
+    }
+
+    /**
+     * Returns the duration of the whole sequence in milliseconds,
+     * -1 if the sequence couldn't be flattened. Expands the sequence
+     * like <code>getEventCount()</code>.
+     */
+    public synchronized int getTotalDuration() {
+        return flatten() ? totalDuration : -1;
+    }
+
+    /**
+     * Returns the validated sequence. The array must not be modified.
+     */
+    byte[] getBytes() {
+        return sequence;
+    }
+
+    private boolean matches(byte[] seq) {
+        if (seq.length != sequence.length) {
+            return false;
+        }
+        for (int i = 0; i < seq.length; i++) {
+            if (seq[i] != sequence[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* FNV-1a */
+    private static int hashCode(byte[] seq) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < seq.length; i++) {
+            h = (h ^ (seq[i] & 0xff)) * 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * Checks the sequence.
+     *
+     * @return the offset of the first DUALTONE event or -1
+     */
+    private int compile() {
+        int[] dual = { -1 };
+        String estr = parse(dual);
+        if (null != estr) {
+            throw new IllegalArgumentException("Tone sequence check failed at offset " +
+                pos + ": " + estr);
+        }
+        return dual[0];
+    }
+
+    /**
+     * Expands the checked sequence into the flat event list, once.
+     *
+     * @return false if the sequence expands to too many events
+     */
+    private boolean flatten() {
+        if (!flattened) {
+            flattened = true;
+            expand = true;
+            bEvents = new int[16];
+            bCount = 0;
+            overflow = false;
+            // can't fail, the sequence was checked by compile()
+            parse(new int[] { -1 });
+            if (!overflow) {
+                resolve();
+            }
+            bEvents = null;
+            expand = false;
+        }
+        return events != null;
+    }
+
+    /**
+     * Runs over the whole sequence, checking it and, if
+     * <code>expand</code> is set, expanding it into bEvents.
+     *
+     * @return null if success, error message otherwise
+     */
+    private String parse(int[] dual) {
+        String estr;
+
+        pos = 0;
+        blocks = new int[128][];
+        try {
+            estr = checkHeader();
+            if (null == estr) {
+                estr = checkBody(dual);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            estr = "unexpected end of sequence";
+        }
+        // release the compiler state
+        blocks = null;
+        return estr;
+    }
+
+    private String checkHeader() {
+        // version
+        if (sequence.length < 2 || ToneControl.VERSION != sequence[0]) {
+            return "missing version information";
+        }
+        if (1 != sequence[1]) {
+            return "incompatible version '" + sequence[1] + "'";
+        }
+        pos = 2;
+
+        // *1 tempo_definition
+        if (pos < sequence.length && ToneControl.TEMPO == sequence[pos]) {
+            if (sequence[pos + 1] < 5) {
+                return "invalid tempo value '" + sequence[pos + 1] + "'";
+            }
+            tempo = sequence[pos + 1];
+            pos += 2;
+        }
+
+        // *1 resolution_definition
+        if (pos < sequence.length && ToneControl.RESOLUTION == sequence[pos]) {
+            if (sequence[pos + 1] < 1) {
+                return "invalid resolution value '" + sequence[pos + 1] + "'";
+            }
+            resolution = sequence[pos + 1];
+            pos += 2;
+        }
+        return null;
+    }
+
+    private String checkBody(int[] dual) {
+        // * block_definition
+        while (pos < sequence.length && ToneControl.BLOCK_START == sequence[pos]) {
+            // block_number
+            byte blk = sequence[pos + 1];
+            if (blk < 0) {
+                return "invalid block number '" + blk + "'";
+            }
+            pos += 2;
+            int blkLen = 0;
+            int first = bCount;
+
+            // 1*sequence_event BLOCK_END
+            while (ToneControl.BLOCK_END != sequence[pos]) {
+                String estr = checkEvent(dual);
+                if (null != estr) {
+                    return estr;
+                }
+                blkLen++;
+            }
+            if (0 == blkLen) {
+                return "block #" + blk + " is empty.";
+            }
+
+            // block_number
+            if (blk != sequence[pos + 1]) {
+                return "block #" + blk +
+                    ": mismatching closing block number '" + sequence[pos + 1] + "'";
+            }
+            // keep the expanded block aside, it's only played by PLAY_BLOCK
+            blocks[blk] = saveEvents(first);
+            bCount = first;
+            pos += 2;
+        }
+
+        // 1* sequence_event
+        int evtCount = 0;
+        while (pos < sequence.length) {
+            String estr = checkEvent(dual);
+            if (null != estr) {
+                return estr;
+            }
+            evtCount++;
+        }
+        if (0 == evtCount) {
+            return "sequence contains no sequence events";
+        }
+        return null;
+    }
+
+    /**
+     * Validates and expands a single sequence_event. If succeeded,
+     * after return 'pos' points to next byte after the event.
+     *
+     * @return null if success, error message otherwise
+     */
+    private String checkEvent(int[] dual) {
+        byte evt = sequence[pos];
+        byte blk, dur, vol, rep;
+
+        switch (evt) {
+        case ToneControl.PLAY_BLOCK:
+            blk = sequence[pos + 1];
+            if (blk < 0) return "invalid block number '" + blk + "'";
+            if (blocks[blk] == null) return "block #" + blk + " undefined";
+            playBlock(blocks[blk]);
+            pos += 2;
+            break;
+        case ToneControl.SET_VOLUME:
+            vol = sequence[pos + 1];
+            if (vol < 0 || vol > 100) return "invalid volume '" + vol + "'";
+            // resolved into the volume of the following events later
+            addEvent(ToneControl.SET_VOLUME, vol, 0);
+            pos += 2;
+            break;
+        case ToneControl.REPEAT:
+            rep = sequence[pos + 1];
+            evt = sequence[pos + 2];
+            dur = sequence[pos + 3];
+            if (rep < 2) return "invalid repeat count '" + rep + "'";
+            if (evt == ToneControl.SILENCE || evt >= 0) {
+                if (dur < 1) return "invalid duration '" + dur + "'";
+            } else {
+                return "invalid repeated event '" + evt + "'";
+            }
+            for (int i = 0; i < rep; i++) {
+                addEvent(evt, NO_NOTE, dur);
+            }
+            pos += 4;
+            break;
+        case DualToneControl.DUALTONE:
+            if (sequence[pos + 1] < 0) return "invalid dualtone 1st param '" + sequence[pos + 1] + "'";
+            if (sequence[pos + 2] < 0) return "invalid dualtone 2nd param '" + sequence[pos + 2] + "'";
+            if (sequence[pos + 3] < 0) return "invalid dualtone 3rd param '" + sequence[pos + 3] + "'";
+            if (dual[0] < 0) {
+                dual[0] = pos;
+            }
+            // DUALTONE duration note note
+            addEvent(sequence[pos + 2], sequence[pos + 3], sequence[pos + 1]);
+            pos += 4;
+            break;
+        default: // note or SILENCE
+            if (evt == ToneControl.SILENCE || evt >= 0) {
+                dur = sequence[pos + 1];
+                if (dur < 1) return "invalid duration '" + dur + "'";
+                addEvent(evt, NO_NOTE, dur);
+                pos += 2;
+            } else {
+                return "invalid sequence event '" + evt + "'";
+            }
+        }
+        return null;
+    }
+
+    private void addEvent(int note, int note2, int ticks) {
+        if (expand) {
+            append((note & 0xff) | ((note2 & 0xff) << 8) | (ticks << 16));
+        }
+    }
+
+    private void append(int event) {
+        if (bCount == MAX_EVENTS) {
+            overflow = true;
+        }
+        if (overflow) {
+            return;
+        }
+        if (bCount == bEvents.length) {
+            int[] b = new int[bCount * 2];
+            System.arraycopy(bEvents, 0, b, 0, bCount);
+            bEvents = b;
+        }
+        bEvents[bCount++] = event;
+    }
+
+    /** Copies the events from first on */
+    private int[] saveEvents(int first) {
+        if (!expand) {
+            return NO_EVENTS;
+        }
+        int n = overflow ? 0 : bCount - first;
+        int[] saved = new int[n];
+        System.arraycopy(bEvents, first, saved, 0, n);
+        return saved;
+    }
+
+    private void playBlock(int[] saved) {
+        for (int i = 0; i < saved.length && !overflow; i++) {
+            append(saved[i]);
+        }
+    }
+
+    /**
+     * Turns volume events into event volumes and ticks into milliseconds.
+     * Start times are computed from the accumulated ticks, so rounding
+     * doesn't add up over long sequences.
+     */
+    private void resolve() {
+        int n = 0;
+        for (int i = 0; i < bCount; i++) {
+            if ((byte)bEvents[i] != ToneControl.SET_VOLUME) {
+                n++;
+            }
+        }
+        int[] ev = new int[n];
+        int[] st = new int[n];
+
+        // tempo is in units of 4 bpm, resolution in units per whole note
+        long div = (long)tempo * resolution;
+        int volume = 100;
+        long ticks = 0;
+        int e = 0;
+        for (int i = 0; i < bCount; i++) {
+            int b = bEvents[i];
+            if ((byte)b == ToneControl.SET_VOLUME) {
+                volume = (b >> 8) & 0xff;
+                continue;
+            }
+            ev[e] = (b & 0xffff) | (volume << 16);
+            st[e] = (int)(ticks * 60000 / div);
+            ticks += b >>> 16;
+            e++;
+        }
+        events = ev;
+        starts = st;
+        eventCount = n;
+        totalDuration = (int)(ticks * 60000 / div);
+    }
+}
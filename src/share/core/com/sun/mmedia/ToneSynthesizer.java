@@ -0,0 +1,352 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import javax.microedition.media.control.ToneControl;
+
+/**
+ * Pure Java tone synthesizer.
+ * <p>
+ * A bank of oscillators renders notes as square, sine or custom single
+ * cycle wavetable waveforms with a linear attack/release envelope and
+ * mixes them into 16 bit mono PCM. Notes may overlap freely; when all
+ * voices are busy, the voice closest to its end is reused.
+ * <p>
+ * All buffers are allocated by the constructor, so rendering doesn't
+ * allocate and the synthesizer can be run without any audio device.
+ * It isn't thread safe.
+ */
+public final class ToneSynthesizer {
+
+    /** Square waveform */
+    public static final int SQUARE = 0;
+    /** Sine waveform */
+    public static final int SINE = 1;
+    /** Custom single cycle waveform set by <code>setWaveTable</code> */
+    public static final int TABLE = 2;
+
+    /** Wavetable length, a power of 2 */
+    private static final int TABLE_SIZE = 256;
+    private static final int TABLE_SHIFT = 24;
+    /** Output of a single voice at full volume, leaves headroom for 4 voices */
+    private static final int VOICE_AMPLITUDE = 32767 / 4;
+
+    private static short[] sineTable;
+    /** frequencies of the 128 notes in Hz */
+    private static double[] noteFrequencies;
+
+    private final int sampleRate;
+    private final short[] table = new short[TABLE_SIZE];
+    private int waveform = SQUARE;
+    private int attack;
+    private int release;
+
+    /* voices */
+    private final int[] wave;
+    private final int[] phase;
+    private final int[] increment;
+    private final int[] amplitude;
+    private final int[] position;
+    private final int[] length;
+
+    /**
+     * Creates a synthesizer.
+     *
+     * @param sampleRate the output sample rate in Hz
+     * @param voices     the number of notes which can sound at once
+     */
+    public ToneSynthesizer(int sampleRate, int voices) {
+        if (sampleRate <= 0 || voices <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.sampleRate = sampleRate;
+        wave = new int[voices];
+        phase = new int[voices];
+        increment = new int[voices];
+        amplitude = new int[voices];
+        position = new int[voices];
+        length = new int[voices];
+        initTables();
+        System.arraycopy(sineTable, 0, table, 0, TABLE_SIZE);
+        setEnvelope(5, 10);
+    }
+
+    private static synchronized void initTables() {
+        if (sineTable != null) {
+            return;
+        }
+        short[] sine = new short[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            sine[i] = (short)(32767 * Math.sin(2 * Math.PI * i / TABLE_SIZE));
+        }
+        // SEMITONE_CONST = 2^(1/12), A4 (note 69) = 440 Hz
+        double[] f = new double[128];
+        f[69] = 440.0;
+        for (int n = 70; n < 128; n++) {
+            f[n] = f[n - 1] * 1.0594630943592953;
+        }
+        for (int n = 68; n >= 0; n--) {
+            f[n] = f[n + 1] / 1.0594630943592953;
+        }
+        noteFrequencies = f;
+        sineTable = sine;
+    }
+
+    /**
+     * Returns the output sample rate in Hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Selects the waveform of the notes started from now on.
+     *
+     * @param waveform <code>SQUARE</code>, <code>SINE</code> or
+     * <code>TABLE</code>
+     */
+    public void setWaveform(int waveform) {
+        if (waveform < SQUARE || waveform > TABLE) {
+            throw new IllegalArgumentException("unknown waveform " + waveform);
+        }
+        this.waveform = waveform;
+    }
+
+    /**
+     * Sets one cycle of the <code>TABLE</code> waveform. The samples
+     * are resampled to the internal table length.
+     */
+    public void setWaveTable(short[] samples) {
+        if (samples == null || samples.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            table[i] = samples[i * samples.length / TABLE_SIZE];
+        }
+    }
+
+    /**
+     * Sets the envelope of the notes started from now on.
+     *
+     * @param attackMs  the fade in time in milliseconds
+     * @param releaseMs the fade out time in milliseconds
+     */
+    public void setEnvelope(int attackMs, int releaseMs) {
+        attack = msToFrames(attackMs < 0 ? 0 : attackMs);
+        release = msToFrames(releaseMs < 0 ? 0 : releaseMs);
+    }
+
+    /**
+     * Starts a note.
+     *
+     * @param note     the note, 0 to 127, or <code>ToneControl.SILENCE</code>
+     * @param duration the duration in milliseconds
+     * @param volume   the volume, 0 to 100
+     */
+    public void noteOn(int note, int duration, int volume) {
+        noteOn(note, duration, volume, 0);
+    }
+
+    /**
+     * Starts a note which has already been sounding for a while.
+     *
+     * @param note     the note, 0 to 127, or <code>ToneControl.SILENCE</code>
+     * @param duration the duration in milliseconds
+     * @param volume   the volume, 0 to 100
+     * @param elapsed  the number of frames of the note already played
+     */
+    void noteOn(int note, int duration, int volume, int elapsed) {
+        if (note == ToneControl.SILENCE || volume <= 0 || duration <= 0) {
+            return;
+        }
+        if (note < 0 || note > 127) {
+            throw new IllegalArgumentException("invalid note " + note);
+        }
+        if (volume > 100) {
+            volume = 100;
+        }
+
+        // a free voice, or the one which is closest to its end
+        int v = 0;
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < length.length; i++) {
+            int left = length[i] - position[i];
+            if (left < best) {
+                best = left;
+                v = i;
+            }
+        }
+
+        wave[v] = waveform;
+        increment[v] = (int)(long)(noteFrequencies[note] * 4294967296.0 / sampleRate);
+        phase[v] = increment[v] * elapsed;
+        amplitude[v] = VOICE_AMPLITUDE * volume / 100;
+        position[v] = elapsed;
+        length[v] = msToFrames(duration);
+    }
+
+    /**
+     * Silences all voices.
+     */
+    public void allNotesOff() {
+        for (int i = 0; i < length.length; i++) {
+            position[i] = length[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the number of frames until all started notes have ended.
+     */
+    public int getRemainingFrames() {
+        int max = 0;
+        for (int i = 0; i < length.length; i++) {
+            int left = length[i] - position[i];
+            if (left > max) {
+                max = left;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Advances all voices without rendering.
+     */
+    public void skip(int frames) {
+        for (int i = 0; i < length.length; i++) {
+            if (position[i] >= length[i]) {
+                continue;
+            }
+            int to = position[i] + frames;
+            if (to > length[i]) {
+                to = length[i];
+            }
+            phase[i] += increment[i] * (to - position[i]);
+            position[i] = to;
+        }
+    }
+
+    /**
+     * Mixes the next frames of all voices.
+     *
+     * @param out    receives 16 bit mono samples
+     * @param off    the offset of the first sample in <code>out</code>
+     * @param frames the number of frames to render
+     */
+    public void render(short[] out, int off, int frames) {
+        for (int f = 0; f < frames; f++) {
+            int mix = 0;
+            for (int i = 0; i < length.length; i++) {
+                int pos = position[i];
+                if (pos >= length[i]) {
+                    continue;
+                }
+                position[i] = pos + 1;
+
+                int p = phase[i];
+                phase[i] = p + increment[i];
+                int s;
+                switch (wave[i]) {
+                case SQUARE:
+                    s = (p < 0) ? -32767 : 32767;
+                    break;
+                case SINE:
+                    s = sineTable[p >>> TABLE_SHIFT];
+                    break;
+                default:
+                    s = table[p >>> TABLE_SHIFT];
+                }
+
+                // linear attack and release
+                int amp = amplitude[i];
+                int left = length[i] - pos;
+                if (pos < attack) {
+                    amp = amp * pos / attack;
+                }
+                if (left < release) {
+                    amp = amp * left / release;
+                }
+                mix += s * amp >> 15;
+            }
+            if (mix > 32767) {
+                mix = 32767;
+            } else if (mix < -32768) {
+                mix = -32768;
+            }
+            out[off + f] = (short)mix;
+        }
+    }
+
+    /**
+     * Returns the number of frames needed to render a sequence.
+     */
+    public int getFrames(ToneSequence seq) {
+        int total = seq.getTotalDuration();
+        if (total < 0) {
+            throw new IllegalArgumentException("sequence too long");
+        }
+        return msToFrames(total);
+    }
+
+    /**
+     * Renders a whole tone sequence, dual tones included, from the
+     * current position.
+     *
+     * @param seq the sequence
+     * @param out receives <code>getFrames(seq)</code> samples
+     * @param off the offset of the first sample in <code>out</code>
+     */
+    public void render(ToneSequence seq, short[] out, int off) {
+        int frames = getFrames(seq);
+        int n = seq.getEventCount();
+        int done = 0;
+        int e = 0;
+        while (done < frames) {
+            // start the notes which are due before the next chunk
+            int chunk = frames - done;
+            while (e < n) {
+                int start = msToFrames(seq.getStartTime(e));
+                if (start > done) {
+                    if (start - done < chunk) {
+                        chunk = start - done;
+                    }
+                    break;
+                }
+                noteOn(seq.getNote(e), seq.getDuration(e), seq.getVolume(e));
+                if (seq.getSecondNote(e) != ToneSequence.NO_NOTE) {
+                    noteOn(seq.getSecondNote(e), seq.getDuration(e), seq.getVolume(e));
+                }
+                e++;
+            }
+            render(out, off + done, chunk);
+            done += chunk;
+        }
+    }
+
+    /**
+     * Converts milliseconds to frames at the output sample rate.
+     */
+    public int msToFrames(int ms) {
+        return (int)((long)ms * sampleRate / 1000);
+    }
+}
@@ -69,6 +69,14 @@ public abstract class VideoRenderer {
      *  Description of the Field
      */
     public final static int YVYU = 10; // byte []
+    /**
+     *  16 bit RGB with 5 bits per component, the top bit unused
+     */
+    public final static int RGB555 = 11; // short []
+    /**
+     *  8 bit indices into the palette set with <code>setPalette</code>
+     */
+    public final static int PALETTE8 = 12; // byte []
     /**
      *  Description of the Field
      */
@@ -78,7 +86,34 @@ public abstract class VideoRenderer {
      */
     public final static int USE_ALPHA = 256;
     
-    public abstract void initRendering(int colorMode, int width, int height);    
+    /**
+     *  Prepares the renderer for frames of the given format and size.
+     *  The renderer may not support the requested color format, then
+     *  it chooses another one, at least <code>XRGB888</code>. The
+     *  producer must render its frames in the returned format.
+     *  <p>
+     *  This used to return <code>void</code>. Renderers written against
+     *  that version have to be updated to return the format they render,
+     *  which is <code>XRGB888</code> if they accept nothing else.
+     *
+     * @param  colorMode  the preferred color format, optionally ORed
+     *                    with <code>NATIVE_RENDER</code> and
+     *                    <code>USE_ALPHA</code>
+     * @param  width      the frame width
+     * @param  height     the frame height
+     * @return            the color format actually used, with the
+     *                    flags of <code>colorMode</code>
+     */
+    public abstract int initRendering(int colorMode, int width, int height);
+    /**
+     *  Sets the ARGB colors for <code>PALETTE8</code> frames.
+     *  The palette is copied and used for the frames rendered afterwards.
+     *  Renderers which don't accept <code>PALETTE8</code> ignore it.
+     *
+     * @param  palette  up to 256 ARGB colors
+     */
+    public void setPalette(int[] palette) {
+    }
     public abstract void render(byte[] colorData);
     public abstract void render(short[] colorData);
     public abstract void render(int[] colorData);
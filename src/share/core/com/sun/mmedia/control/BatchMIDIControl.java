@@ -0,0 +1,71 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.mmedia.control;
+
+import javax.microedition.media.control.MIDIControl;
+
+/**
+ * <code>BatchMIDIControl</code> extends <code>MIDIControl</code> with
+ * the submission of many short MIDI events in one call, e.g. chords or
+ * controller sweeps.
+ * <p>
+ * Events are packed into an <code>int</code> array as pairs of a time
+ * offset and a message:
+ * <pre>
+ * events[2 * i]     = offset in milliseconds from the call, &gt;= 0
+ * events[2 * i + 1] = (type &lt;&lt; 16) | (data1 &lt;&lt; 8) | data2
+ * </pre>
+ * Offsets must not decrease. Events with offset 0 are sent at once,
+ * the others when their time has come.
+ */
+public interface BatchMIDIControl extends MIDIControl {
+
+    /** Shift of the type (status) byte in a packed message */
+    int TYPE_SHIFT = 16;
+    /** Shift of the first data byte in a packed message */
+    int DATA1_SHIFT = 8;
+
+    /**
+     * Sends a batch of short MIDI events.
+     * <p>
+     * All events are checked before any is sent, with the same rules
+     * as <code>shortMidiEvent</code>.
+     *
+     * @param events the packed events
+     * @param offset the index of the first pair in <code>events</code>
+     * @param count  the number of events
+     * @exception IllegalArgumentException Thrown if an event is invalid,
+     * if the offsets decrease or if the array is too short.
+     * @exception IllegalStateException Thrown if the player has not
+     * been prefetched.
+     */
+    void shortMidiEvents(int[] events, int offset, int count);
+
+    /**
+     * Discards the events of earlier batches which have not been sent
+     * yet.
+     */
+    void cancelMidiEvents();
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.mmedia.control;
+
+import javax.microedition.media.Control;
+
+/**
+ * <code>FramePacingControl</code> reports how precisely a video player
+ * presents its frames at their display time.
+ * <p>
+ * Jitter is the absolute difference between the time a frame was
+ * presented and its deadline. Frames presented early and late are
+ * counted in separate histograms, which share the bucket bounds
+ * returned by <code>getHistogramBounds()</code>. All times are in
+ * microseconds.
+ */
+public interface FramePacingControl extends Control {
+
+    /**
+     * Returns the number of frames presented.
+     */
+    int getPresentedFrames();
+
+    /**
+     * Returns the number of frames dropped because they were late.
+     */
+    int getDroppedFrames();
+
+    /**
+     * Returns the mean absolute presentation jitter.
+     */
+    long getMeanJitter();
+
+    /**
+     * Returns the largest absolute presentation jitter.
+     */
+    long getMaxJitter();
+
+    /**
+     * Returns the upper bounds of the histogram buckets. There is one
+     * more bucket than bounds for everything above the last bound.
+     */
+    long[] getHistogramBounds();
+
+    /**
+     * Returns a copy of the histogram of frames presented early.
+     */
+    int[] getEarlyHistogram();
+
+    /**
+     * Returns a copy of the histogram of frames presented late.
+     */
+    int[] getLateHistogram();
+
+    /**
+     * Clears the statistics.
+     */
+    void resetStatistics();
+}
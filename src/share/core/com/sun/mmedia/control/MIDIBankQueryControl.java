@@ -0,0 +1,57 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.mmedia.control;
+
+import javax.microedition.media.MediaException;
+import javax.microedition.media.control.MIDIControl;
+
+/**
+ * <code>MIDIBankQueryControl</code> extends <code>MIDIControl</code>
+ * with control over the cache of the bank query results.
+ * <p>
+ * Bank lists, program lists, program names and key names are cached
+ * once queried. The cache is dropped when the sound bank may have
+ * changed, i.e. after a long MIDI event, or on request.
+ */
+public interface MIDIBankQueryControl extends MIDIControl {
+
+    /**
+     * Queries the program list and all program names of a bank at once,
+     * e.g. to fill an instrument picker.
+     *
+     * @param bank the bank, 0 to 16383
+     * @exception IllegalArgumentException Thrown if the bank is out of range.
+     * @exception IllegalStateException Thrown if the player has not
+     * been prefetched.
+     * @exception MediaException Thrown if the bank cannot be queried.
+     */
+    void prefetchBank(int bank) throws MediaException;
+
+    /**
+     * Drops the cached query results, e.g. after the sound bank has
+     * been changed by other means than a long MIDI event.
+     */
+    void invalidateBankCache();
+}
@@ -35,6 +35,7 @@ import com.sun.j2me.log.Logging;
 import com.sun.j2me.log.LogChannels;
 import com.sun.mmedia.HighLevelPlayer;
 import com.sun.mmedia.TonePlayer;
+import com.sun.mmedia.SynthTonePlayer;
 import com.sun.mmedia.Configuration;
 import com.sun.mmedia.protocol.*;
 import com.sun.mmedia.DefaultConfiguration;
@@ -523,7 +524,7 @@ public final class Manager {
      * @return           The list of supported content types for the given protocol.
      */
     public static String[] getSupportedContentTypes(String protocol) {
-        return config.getSupportedContentTypes(protocol);        
+        return config.listContentTypes(protocol);
     }
 
 
@@ -555,7 +556,7 @@ public final class Manager {
      * @return               The list of supported protocols for the given content type.
      */
     public static String[] getSupportedProtocols(String content_type) {
-        return config.getSupportedProtocols(content_type);
+        return config.listProtocols(content_type);
     }
 
 
@@ -649,14 +650,7 @@ public final class Manager {
                 throw new MediaException("Player cannot be created for " + locator);
             }
         } else {
-            String supportedProtocols[] = getSupportedProtocols(null);
-            for (int i = 0; i < supportedProtocols.length && !found; i++) {
-                if (theProtocol.equals(supportedProtocols[i])) {
-                    found = true;
-                }
-            }
-
-            if (!found) {
+            if (!config.isSupportedProtocol(theProtocol)) {
                 throw new MediaException("Player cannot be created for " + locator + 
                                         " Unsupported protocol " + theProtocol);
             }
@@ -976,6 +970,19 @@ public final class Manager {
         if (tonePlayer != null) {
             int res = 
             tonePlayer.playTone(note, duration, volume);
+
+            if( TonePlayer.RESULT_NO_AUDIO_DEVICE == res &&
+                    !( tonePlayer instanceof SynthTonePlayer ) )
+            {
+                // No native tone device: render the tones in Java
+                // and play them as PCM instead
+                tonePlayer = new SynthTonePlayer();
+                res = tonePlayer.playTone(note, duration, volume);
+                if( TonePlayer.RESULT_FAIL == res )
+                {
+                    res = TonePlayer.RESULT_NO_AUDIO_DEVICE;
+                }
+            }
             
             if( TonePlayer.RESULT_FAIL == res )
             {
@@ -1041,14 +1048,7 @@ public final class Manager {
                     theProtocol = locator.substring(0, idx);
                 }
             }
-            String supportedContentTypes[] = getSupportedContentTypes(theProtocol);
-            boolean found = false;
-            for(int i=0; i<supportedContentTypes.length && !found; i++) {
-                if (type.equals(supportedContentTypes[i])) {
-                    found = true;
-                }
-            }
-            if (!found) {
+            if (!config.isSupportedContentType(theProtocol, type)) {
                 throw new MediaException("Player cannot be created for " + type);
             }
         }